@@ -0,0 +1,81 @@
+package jspell.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jspell.Corrector;
+import jspell.Dictionary;
+import jspell.LanguageDetector;
+import jspell.Misspelling;
+import jspell.modules.ModuleAggregator;
+
+/**
+ * The annotation pipeline of the {@link Corrector} on a text of about 20 000 characters: tokenization, lookup of each word, and search of the siblings of the
+ * unknown words with the default modules. The texts are the beginning of "germinal.txt", checked with a French dictionary built from the novel, and a text
+ * drawn from the English dictionary. A given proportion of their words is misspelled.
+ * <br><br>
+ * With a cache capacity of 0, the siblings of every unknown word are searched again at each run. Otherwise, the suggestion cache of the dictionary keeps them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationBenchmark
+{
+	private static final int TEXT_LENGTH = 20000;
+
+	@Param({"english", "french"})
+	public String language;
+
+	@Param({"0", "0.02", "0.1"})
+	public double misspellingRate;
+
+	@Param({"0", "1024"})
+	public int cacheCapacity;
+
+	private Corrector corrector;
+	private Dictionary dictionary;
+	private LanguageDetector detector;
+	private String text;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		Dictionary en = new Dictionary("English", Fixtures.englishDictionary("all"));
+		Dictionary fr = new Dictionary("Francais", Fixtures.frenchDictionary(), Locale.FRENCH, ModuleAggregator::new);
+		corrector = new Corrector(fr, en);
+		detector = corrector.getLanguageDetector();
+		dictionary = language.equals("french") ? fr : en;
+		dictionary.getSuggestionCache().setCapacity(cacheCapacity);
+		text = language.equals("french") ? Fixtures.frenchText(TEXT_LENGTH, misspellingRate) : Fixtures.englishText(en.getWordStore(), TEXT_LENGTH, misspellingRate);
+	}
+
+	@Benchmark
+	public List<Misspelling> check() throws IOException
+	{
+		return corrector.check(new StringReader(text), dictionary);
+	}
+
+	@Benchmark
+	public LanguageDetector.Sample detect() throws IOException
+	{
+		return detector.detect(new StringReader(text));
+	}
+}
@@ -0,0 +1,59 @@
+package jspell.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jspell.Dictionary;
+import jspell.DictionarySnapshot;
+
+/**
+ * Loading of the English dictionary with the default modules, from the text file or from its binary snapshot (see {@link DictionarySnapshot}).
+ * Each load is measured once, as the first load of a program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DictionaryLoadBenchmark
+{
+	@Param({"text", "snapshot"})
+	public String source;
+
+	@Param({"10000", "all"})
+	public String dictionarySize;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		file = Fixtures.englishDictionary(dictionarySize);
+		if(source.equals("snapshot"))
+		{
+			DictionarySnapshot.write(new Dictionary("English", file));
+			DictionarySnapshot.fileFor(file).deleteOnExit();
+		}
+	}
+
+	@Benchmark
+	public Dictionary load() throws IOException
+	{
+		return new Dictionary("English", file, Locale.US);
+	}
+}
@@ -0,0 +1,222 @@
+package jspell.bench;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jspell.Dictionary;
+import jspell.WordStore;
+import jspell.modules.Module;
+import jspell.modules.ModuleAggregator;
+
+/**
+ * The data shared by the benchmarks: the English dictionary "dic/english.txt", the French novel "germinal.txt" used both as a French dictionary and as a text
+ * to check, and the misspelled words and texts generated from them.
+ * <br><br>
+ * The files are looked up in the directory given by the system property "jspell.home", then in the current directory and its parent, so that the benchmarks
+ * can be run from the repository or from the bench directory. The dictionaries are always loaded from copies in a temporary directory: the benchmarks never
+ * create a snapshot or a journal next to the files of the repository.
+ */
+final class Fixtures
+{
+	/**
+	 * Seed of all the random choices, so that every run measures the same words.
+	 */
+	static final long SEED = 42;
+
+	private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+	private static final Pattern WORD = Pattern.compile("\\p{L}+");
+
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * Returns a file of the repository
+	 * @param path the path of the file, relative to the root of the repository
+	 * @return the file
+	 * @throws FileNotFoundException if the file isn't found
+	 */
+	static File file(String path) throws FileNotFoundException
+	{
+		String home = System.getProperty("jspell.home");
+		String[] roots = home != null ? new String[] {home} : new String[] {".", ".."};
+		for(String root : roots)
+		{
+			File f = new File(root, path);
+			if(f.isFile()) return f;
+		}
+		throw new FileNotFoundException(path+" not found, run the benchmarks from the repository or set -Djspell.home");
+	}
+
+	/**
+	 * Copies the English dictionary to a temporary file, keeping only some of its words
+	 * @param size the number of words to keep, spread over the whole alphabet, or "all"
+	 * @return the copy
+	 * @throws IOException if the dictionary can't be read or copied
+	 */
+	static File englishDictionary(String size) throws IOException
+	{
+		File source = file("dic/english.txt");
+		File copy = temporaryFile("english-"+size+".txt");
+		if(size.equals("all"))
+		{
+			Files.copy(source.toPath(), copy.toPath());
+			return copy;
+		}
+
+		WordStore words = new Dictionary("English", source, Locale.US, d -> (Module)w -> new String[0]).getWordStore();
+		int count = Math.min(Integer.parseInt(size), words.size());
+		StringBuilder lines = new StringBuilder();
+		for(int i = 0; i < count; i++) lines.append(words.getWord((int)((long)i * words.size() / count))).append("\r\n");
+		Files.write(copy.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+		return copy;
+	}
+
+	/**
+	 * Copies "germinal.txt" to a temporary file, to be loaded as a French dictionary
+	 * @return the copy
+	 * @throws IOException if the file can't be copied
+	 */
+	static File frenchDictionary() throws IOException
+	{
+		File copy = temporaryFile("germinal.txt");
+		Files.copy(file("germinal.txt").toPath(), copy.toPath());
+		return copy;
+	}
+
+	private static File temporaryFile(String name) throws IOException
+	{
+		File directory = Files.createTempDirectory("jspell-bench").toFile();
+		directory.deleteOnExit();
+		File f = new File(directory, name);
+		f.deleteOnExit();
+		return f;
+	}
+
+	/**
+	 * Builds a module by its name: the class name without "Module", or "Aggregator" for the default {@link ModuleAggregator}
+	 * @param module the name of the module
+	 * @param d the dictionary
+	 * @return the module
+	 */
+	static Module createModule(String module, Dictionary d)
+	{
+		switch(module)
+		{
+			case "DamerauLevenshtein": return new jspell.modules.DamerauLevenshteinModule(d);
+			case "DamerauLevenshteinScan": return new jspell.modules.DamerauLevenshteinModule(d, 1);
+			case "Hamming": return new jspell.modules.HammingModule(d);
+			case "Soundex": return new jspell.modules.SoundexModule(d);
+			case "DoubleMetaphone": return new jspell.modules.DoubleMetaphoneModule(d);
+			case "Trigram": return new jspell.modules.TrigramModule(d);
+			case "SymSpell": return new jspell.modules.SymSpellModule(d);
+			case "LevenshteinAutomaton": return new jspell.modules.LevenshteinAutomatonModule(d);
+			case "Aggregator": return new ModuleAggregator(d);
+			default: throw new IllegalArgumentException("Unknown module "+module);
+		}
+	}
+
+	/**
+	 * Picks words of a dictionary and misspells each of them with one random edit
+	 * @param words the words of the dictionary
+	 * @param length the length of the picked words, before the edit
+	 * @param count the number of words
+	 * @return the misspelled words, which may be empty if the dictionary has no word of this length
+	 */
+	static String[] misspelledWords(WordStore words, int length, int count)
+	{
+		List<String> candidates = new ArrayList<>();
+		for(int id = 0; id < words.size(); id++)
+		{
+			if(words.getLength(id) == length) candidates.add(words.getWord(id));
+		}
+
+		Random random = new Random(SEED);
+		List<String> misspelled = new ArrayList<>();
+		for(int i = 0; i < count && !candidates.isEmpty(); i++)
+		{
+			misspelled.add(misspell(candidates.get(random.nextInt(candidates.size())), random));
+		}
+		return misspelled.toArray(new String[0]);
+	}
+
+	/**
+	 * Applies one random edit to a word: a substitution, an insertion, a deletion or a transposition of letters
+	 * @param word the word
+	 * @param random the random source
+	 * @return the misspelled word
+	 */
+	static String misspell(String word, Random random)
+	{
+		StringBuilder s = new StringBuilder(word);
+		int i = random.nextInt(word.length());
+		char letter = LETTERS.charAt(random.nextInt(LETTERS.length()));
+		switch(word.length() < 2 ? 1 : random.nextInt(4))
+		{
+			case 0: s.setCharAt(i, letter); break;
+			case 1: s.insert(i, letter); break;
+			case 2: s.deleteCharAt(i); break;
+			default:
+				int j = i == word.length()-1 ? i-1 : i;
+				char c = s.charAt(j);
+				s.setCharAt(j, s.charAt(j+1));
+				s.setCharAt(j+1, c);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Returns the beginning of "germinal.txt", with a given proportion of its words misspelled
+	 * @param characters the approximate length of the text
+	 * @param misspellingRate the proportion of misspelled words, from 0 to 1
+	 * @return the text
+	 * @throws IOException if the file can't be read
+	 */
+	static String frenchText(int characters, double misspellingRate) throws IOException
+	{
+		String text = new String(Files.readAllBytes(file("germinal.txt").toPath()), StandardCharsets.UTF_8);
+		return misspellText(text.substring(0, Math.min(characters, text.length())), misspellingRate);
+	}
+
+	/**
+	 * Builds an English text from the words of a dictionary, drawn at random, with a given proportion of them misspelled
+	 * @param words the words of the dictionary
+	 * @param characters the approximate length of the text
+	 * @param misspellingRate the proportion of misspelled words, from 0 to 1
+	 * @return the text
+	 */
+	static String englishText(WordStore words, int characters, double misspellingRate)
+	{
+		Random random = new Random(SEED);
+		StringBuilder text = new StringBuilder(characters + 32);
+		for(int n = 1; text.length() < characters; n++)
+		{
+			text.append(words.getWord(random.nextInt(words.size())));
+			text.append(n % 12 == 0 ? ".\n" : " ");
+		}
+		return misspellText(text.toString(), misspellingRate);
+	}
+
+	private static String misspellText(String text, double misspellingRate)
+	{
+		Random random = new Random(SEED);
+		StringBuffer misspelled = new StringBuffer(text.length());
+		Matcher m = WORD.matcher(text);
+		while(m.find())
+		{
+			String word = m.group();
+			m.appendReplacement(misspelled, Matcher.quoteReplacement(random.nextDouble() < misspellingRate ? misspell(word, random) : word));
+		}
+		m.appendTail(misspelled);
+		return misspelled.toString();
+	}
+}
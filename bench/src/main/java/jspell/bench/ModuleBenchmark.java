@@ -0,0 +1,76 @@
+package jspell.bench;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jspell.Dictionary;
+import jspell.modules.Module;
+
+/**
+ * Search of the siblings of misspelled words by each module, on the English dictionary. The searched words are dictionary words of a given length with one
+ * random edit, searched in turn. The modules are called directly: the suggestion cache of the dictionary isn't involved.
+ * <br><br>
+ * The throughput mode gives the searches per millisecond, the sample mode the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleBenchmark
+{
+	private static final int QUERIES = 512;
+
+	@Param({"DamerauLevenshtein", "Hamming", "Soundex", "DoubleMetaphone", "Trigram", "SymSpell", "LevenshteinAutomaton", "Aggregator"})
+	public String module;
+
+	@Param({"5", "8", "12"})
+	public int wordLength;
+
+	@Param({"10000", "all"})
+	public String dictionarySize;
+
+	private Module searcher;
+	private String[] queries;
+
+	/**
+	 * The position of each thread in the searched words
+	 */
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		int next;
+	}
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		Module[] built = new Module[1];
+		Dictionary d = new Dictionary("English", Fixtures.englishDictionary(dictionarySize), Locale.US, dictionary -> built[0] = Fixtures.createModule(module, dictionary));
+		searcher = built[0];
+		queries = Fixtures.misspelledWords(d.getWordStore(), wordLength, QUERIES);
+		if(queries.length == 0) throw new IllegalStateException("No word of "+wordLength+" letters in the dictionary");
+	}
+
+	@Benchmark
+	public String[] search(Cursor cursor)
+	{
+		String query = queries[cursor.next];
+		cursor.next = (cursor.next + 1) % queries.length;
+		return searcher.getNearestSiblings(query);
+	}
+}
@@ -0,0 +1,37 @@
+package jspell;
+
+import java.io.IOException;
+
+/**
+ * Receives the result of the annotation of a text by {@link Corrector#annotate(java.io.Reader, AnnotationSink)}, token by token and in the order of the text.
+ */
+public interface AnnotationSink
+{
+	/**
+	 * Called for the separators and the known words, which are kept as is.
+	 * @param text the text
+	 * @throws IOException if the text can't be written
+	 */
+	public void text(CharSequence text) throws IOException;
+
+	/**
+	 * Called for each unknown word.
+	 * @param word the unknown word
+	 * @param siblings the propositions for the word
+	 * @throws IOException if the annotation can't be written
+	 */
+	public void misspelling(String word, String[] siblings) throws IOException;
+
+	/**
+	 * Called for each unknown word, with the dictionary it has been checked with: with the detection of the segments, each paragraph may be checked
+	 * with another dictionary. Calls {@link #misspelling(String, String[])} by default.
+	 * @param word the unknown word
+	 * @param siblings the propositions for the word
+	 * @param dictionary the dictionary
+	 * @throws IOException if the annotation can't be written
+	 */
+	public default void misspelling(String word, String[] siblings, Dictionary dictionary) throws IOException
+	{
+		misspelling(word, siblings);
+	}
+}
@@ -0,0 +1,125 @@
+package jspell;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line tool checking text files without any interaction, for scripts and pipelines. The dictionaries are loaded once for all the files.
+ * <br><br>
+ * Usage : java jspell.BatchChecker [-segments] file|directory...
+ * <br> Directories are checked recursively. The -segments option chooses the dictionary of each paragraph instead of the dictionary of each file.
+ * <br><br>
+ * The result is written to the standard output in JSON Lines, one object per unknown word:
+ * <br> {"file":"a.txt","dictionary":"English","offset":120,"length":8,"word":"questoin","suggestions":["question","questions"]}
+ * <br> The dictionary is the one the word has been checked with: the one chosen for the file, or for the paragraph with -segments. A file which can't be read gives an object with an "error" field instead. The exit code is 0 if no unknown word is found, 1 if some are, 2 if a file can't be read.
+ */
+public class BatchChecker
+{
+	/**
+	 * Main method of the tool.
+	 * @param args the options and the files to check
+	 * @throws FileNotFoundException if a dictionary file isn't found
+	 */
+	public static void main(String[] args) throws FileNotFoundException
+	{
+		List<File> files = new ArrayList<>();
+		boolean segments = false;
+		for(String arg : args)
+		{
+			if(arg.equals("-segments")) segments = true;
+			else files.add(new File(arg));
+		}
+		if(files.isEmpty())
+		{
+			System.err.println("Usage : java jspell.BatchChecker [-segments] file|directory...");
+			System.exit(2);
+		}
+
+		Dictionary fr = new Dictionary("Francais", new File("dic/francais.txt"), Locale.FRENCH);
+		Dictionary en = new Dictionary("English", new File("dic/english.txt"));
+		Corrector corrector = new Corrector(fr, en);
+		corrector.setSegmentDetection(segments);
+
+		int status = 0;
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))
+		{
+			for(File file : files)
+			{
+				for(File f : listFiles(file))
+				{
+					status = Math.max(status, check(corrector, f, out));
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write the result: "+e.getMessage());
+			status = 2;
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Returns the regular files of a directory and of its subdirectories, in a stable order, or the file itself
+	 */
+	private static List<File> listFiles(File file) throws IOException
+	{
+		if(!file.isDirectory())
+		{
+			List<File> files = new ArrayList<>();
+			files.add(file);
+			return files;
+		}
+		try(Stream<Path> paths = Files.walk(file.toPath()))
+		{
+			return paths.filter(Files::isRegularFile).sorted().map(Path::toFile).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Checks a file and writes its unknown words
+	 * @return the exit code for this file
+	 */
+	private static int check(Corrector corrector, File f, Writer out) throws IOException
+	{
+		List<Misspelling> misspellings;
+		try
+		{
+			misspellings = corrector.check(f);
+		}
+		catch(IOException e)
+		{
+			out.write("{\"file\":");
+			Json.writeString(out, f.getPath());
+			out.write(",\"error\":");
+			Json.writeString(out, String.valueOf(e.getMessage()));
+			out.write("}\n");
+			return 2;
+		}
+
+		for(Misspelling misspelling : misspellings)
+		{
+			out.write("{\"file\":");
+			Json.writeString(out, f.getPath());
+			out.write(",\"dictionary\":");
+			Dictionary dictionary = misspelling.getDictionary() != null ? misspelling.getDictionary() : corrector.getCurrentDictionary();
+			Json.writeString(out, dictionary.getName());
+			out.write(',');
+			Json.writeMisspellingFields(out, misspelling);
+			out.write("}\n");
+		}
+		return misspellings.isEmpty() ? 0 : 1;
+	}
+}
@@ -0,0 +1,166 @@
+package jspell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A line of text being corrected by {@link Corrector#correctFile(java.io.File)}: its original text, line break included, and the unknown words in it as ranges
+ * of the text with their propositions. The choices of the user are kept on the errors, and the corrected line is only rebuilt when it is written, in one pass
+ * over the text: correcting a line with many errors takes a time linear in its length, whatever the words.
+ */
+final class CorrectionLine
+{
+	private final StringBuilder text;
+	private final List<Error> errors;
+
+	CorrectionLine()
+	{
+		this.text = new StringBuilder();
+		this.errors = new ArrayList<>();
+	}
+
+	/**
+	 * An unknown word of the line: its range in the original text, its propositions, and the word replacing it once the user has chosen.
+	 */
+	static final class Error
+	{
+		private final int start;
+		private final int end;
+		private final String word;
+		private final String[] suggestions;
+		private String replacement;
+
+		private Error(int start, int end, String word, String[] suggestions)
+		{
+			this.start = start;
+			this.end = end;
+			this.word = word;
+			this.suggestions = suggestions;
+		}
+
+		/**
+		 * Returns the unknown word
+		 * @return the word, as written in the text
+		 */
+		String getWord()
+		{
+			return word;
+		}
+
+		/**
+		 * Returns the propositions for the word
+		 * @return the propositions, the best one first. The array must not be modified.
+		 */
+		String[] getSuggestions()
+		{
+			return suggestions;
+		}
+
+		/**
+		 * Replaces the word in the corrected line
+		 * @param replacement the new word
+		 */
+		void replace(String replacement)
+		{
+			this.replacement = replacement;
+		}
+
+		/**
+		 * Keeps the word as it is in the corrected line
+		 */
+		void keep()
+		{
+			this.replacement = word;
+		}
+
+		/**
+		 * Returns true once the word has been replaced or kept
+		 * @return true if the error is resolved
+		 */
+		boolean isResolved()
+		{
+			return replacement != null;
+		}
+	}
+
+	/**
+	 * Appends text to the line
+	 * @param s the text
+	 */
+	void appendText(CharSequence s)
+	{
+		text.append(s);
+	}
+
+	/**
+	 * Appends an unknown word to the line
+	 * @param word the word
+	 * @param suggestions the propositions for the word
+	 */
+	void appendError(String word, String[] suggestions)
+	{
+		int start = text.length();
+		text.append(word);
+		errors.add(new Error(start, text.length(), word, suggestions));
+	}
+
+	/**
+	 * Returns the unknown words of the line
+	 * @return the errors, in the order of the line
+	 */
+	List<Error> getErrors()
+	{
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * Keeps all the unresolved occurrences of a word, ignoring its case, for example once it has been added to the dictionary
+	 * @param word the word
+	 */
+	void keepAll(String word)
+	{
+		for(Error error : errors)
+		{
+			if(!error.isResolved() && error.word.equalsIgnoreCase(word)) error.keep();
+		}
+	}
+
+	/**
+	 * Returns the line as displayed during the correction, without its line break: the unresolved errors are surrounded by **, the resolved ones are replaced
+	 * @return the line to display
+	 */
+	String toDisplayString()
+	{
+		String line = build(true);
+		int end = line.length();
+		while(end > 0 && (line.charAt(end-1) == '\n' || line.charAt(end-1) == '\r')) end--;
+		return line.substring(0, end);
+	}
+
+	/**
+	 * Returns the corrected line: the resolved errors are replaced, the others are kept as they were
+	 * @return the corrected line
+	 */
+	@Override
+	public String toString()
+	{
+		return build(false);
+	}
+
+	private String build(boolean markErrors)
+	{
+		StringBuilder line = new StringBuilder(text.length() + 4*errors.size());
+		int position = 0;
+		for(Error error : errors)
+		{
+			line.append(text, position, error.start);
+			if(error.isResolved()) line.append(error.replacement);
+			else if(markErrors) line.append("**").append(error.word).append("**");
+			else line.append(error.word);
+			position = error.end;
+		}
+		line.append(text, position, text.length());
+		return line.toString();
+	}
+}
@@ -1,20 +1,37 @@
 package jspell;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.CharArrayReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Deque;
 import java.util.InputMismatchException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Main class, building anotations and running corrections.
@@ -33,6 +50,26 @@ public class Corrector
 	 */
 	private Dictionary currentDictionary;
 	
+	/**
+	 * The number of threads used to anotate large files
+	 */
+	private int annotationThreads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The size of the chunks of a large file anotated in parallel, in bytes
+	 */
+	private int annotationChunkSize = 1 << 20;
+	
+	/**
+	 * Chooses the dictionary suited to a text
+	 */
+	private final LanguageDetector languageDetector;
+	
+	/**
+	 * true to choose the dictionary of each paragraph while anotating a text
+	 */
+	private boolean segmentDetection;
+	
 	/**
 	 * Constructor for the Corrector object.
 	 * @param dictionaries the dictionaries the Corrector will be able to use
@@ -42,66 +79,64 @@ public class Corrector
 		if(dictionaries.length == 0) throw new IllegalArgumentException("Provide at least one dictionary to work with!");
 		this.dictionaries = dictionaries;
 		this.currentDictionary = dictionaries[0];
+		this.languageDetector = new LanguageDetector(dictionaries);
 	}
 	
 	/**
-	 * Selects the best dictionary for the providen text file, and sets it as the currently used dictionary for the Corrector
-	 * @param f the text file to analyse
+	 * Sets the dictionary chosen by the {@link LanguageDetector} for a UTF-8 text file as the currently used dictionary, the first one if the file has no known word.
+	 * @param f the text file
+	 * @return the number of words sampled
+	 * @throws IOException if the file can't be read
 	 */
-	private void selectBestDictionary(File f)
+	private int detectDictionary(File f) throws IOException
 	{
-		int[] errors = new int[dictionaries.length];
-		
-		try(Scanner s = new Scanner(f, StandardCharsets.UTF_8.name()))
-		{
-			s.useDelimiter("[\\p{Punct}\\p{Space}]");
-			// For each word
-			while(s.hasNext())
-			{
-				String w = s.next();
-				if(!w.isEmpty())
-				{
-					w = w.toLowerCase();
-					
-					int i=0;
-					// For each dictionary, is it in it?
-					for(i=0; i < dictionaries.length; i++)
-					{
-						if(!dictionaries[i].containsWord(w))
-						{
-							errors[i]++;
-						}
-					}
-				}
-			}
-		}
-		catch(FileNotFoundException e)
-		{
-			System.err.println("Couldn't find the file");
-		}
-		
-		
-		int i=0;
-		int maxErrors = errors[0];
-		int index = 0;
-		
-		// Pour chaque nombre d'erreurs dans un dictionnaire
-		for(int errorNumber : errors)
+		try(Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)))
 		{
-			// Si ce dictionnaire a moins de mots inconnus que les pr�c�dents
-			if(errorNumber < maxErrors)
-			{
-				// On le garde
-				index = i;
-				maxErrors = errorNumber;
-			}
-			i++;
+			LanguageDetector.Sample sample = languageDetector.detect(in);
+			this.currentDictionary = dictionaries[Math.max(sample.getBest(), 0)];
+			return sample.getSize();
 		}
-		
-		System.out.println("Best dictionary for the text \""+f.getName()+"\" is "+dictionaries[index].getName()+" (errors nb : "+errors[index]+")");
-		this.currentDictionary = dictionaries[index];
+	}
+	
+	/**
+	 * Getter for the language detector choosing the dictionary of the texts, to change its settings
+	 * @return the language detector
+	 */
+	public LanguageDetector getLanguageDetector() 
+	{
+		return languageDetector;
+	}
+	
+	/**
+	 * Enables the detection of the language of each paragraph while anotating a text: each paragraph (text between two blank lines) is checked against
+	 * the dictionary chosen for it, instead of the current dictionary. Files anotated this way are read sequentially.
+	 * @param segmentDetection true to choose the dictionary of each paragraph
+	 */
+	public void setSegmentDetection(boolean segmentDetection)
+	{
+		this.segmentDetection = segmentDetection;
 	}
 
+	/**
+	 * Sets the number of threads used to anotate the files larger than one chunk.
+	 * @param threads the number of threads, 1 to anotate the files sequentially
+	 */
+	public void setAnnotationThreads(int threads)
+	{
+		if(threads < 1) throw new IllegalArgumentException("At least one thread is needed to anotate a text");
+		this.annotationThreads = threads;
+	}
+	
+	/**
+	 * Sets the size of the chunks of the files anotated in parallel.
+	 * @param chunkSize the chunk size, in bytes
+	 */
+	public void setAnnotationChunkSize(int chunkSize)
+	{
+		if(chunkSize < 1) throw new IllegalArgumentException("The chunk size must be positive");
+		this.annotationChunkSize = chunkSize;
+	}
+	
 	/**
 	 * Getter for the currently used dictionary.
 	 * @return the currently used dictionary
@@ -122,142 +157,450 @@ public class Corrector
 	}
 	
 	/**
-	 * Anotates a text with the propositions for each unknown word (provided by getNearestSiblings).
-	 * @param input the input text file to anotate
-	 * @param output the name of the anotated text file
+	 * Anotates a UTF-8 text file with the current dictionary. Files larger than the chunk size are split into chunks, cut between two words,
+	 * which are anotated in parallel: the sink still receives the anotated text in order, from the calling thread.
+	 * @param input the text file to anotate
+	 * @param sink the sink receiving the anotated text
 	 * @return the number of errors found
+	 * @throws IOException if the file can't be read, or the sink can't write it
 	 */
-	private int annotateText(File input, File output)
+	public int annotate(File input, AnnotationSink sink) throws IOException
 	{
-		System.out.println("Anotating the text \""+input.getAbsolutePath()+"\" and saving it to \""+output.getAbsolutePath()+"\"...");
-		int errorsNb = 0;
-		try(FileWriter fw = new FileWriter(output); Scanner s = new Scanner(input, StandardCharsets.UTF_8.name()))
+		if(annotationThreads == 1 || input.length() <= annotationChunkSize || segmentDetection)
 		{
-			boolean punct =true;
-			
-			Scanner firstCharTester = new Scanner(input, StandardCharsets.UTF_8.name());
-			firstCharTester.useDelimiter("[\\p{Alnum}]");
-			String firstToken = firstCharTester.next();
-			
-			if(firstToken.isEmpty())	punct = false;
-			firstCharTester.close();
-			
+			try(Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8)))
+			{
+				return annotate(in, sink);
+			}
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(annotationThreads, r -> {
+			Thread t = new Thread(r, "jspell-annotation");
+			t.setDaemon(true);
+			return t;
+		});
+		try(RandomAccessFile file = new RandomAccessFile(input, "r"); FileChannel channel = file.getChannel())
+		{
+			long size = channel.size();
+			long position = 0;
+			int errorsNb = 0;
+			// Chunks being anotated, at most two per thread to bound the memory used
+			Deque<Future<RecordingSink>> chunks = new ArrayDeque<>();
 			
-			// For each line
-			if(punct)
-				s.useDelimiter("[\\p{Alnum}]");
-			else
-				s.useDelimiter("[\\p{Punct}\\p{Space}]+");
-			while(s.hasNext())
+			while(position < size || !chunks.isEmpty())
 			{
-				String w = s.next();
-				
-				// Mot
-				if(!punct)
+				while(position < size && chunks.size() < 2*annotationThreads)
 				{
-					if(currentDictionary.containsWord(w))
-					{
-						fw.write(w);
-					}
-					else
-					{
-						System.out.println("Word \""+w+"\" mispelled");
-						StringBuilder spelling = new StringBuilder("<spell>"+w+"|");
-						String[] siblings = getNearestSiblings(w);
-						for(String sibling : siblings) spelling.append(sibling).append(",");
-						spelling.setLength(spelling.length()-1);
-						spelling.append("</spell>");
-						fw.write(spelling.toString());
-						errorsNb++;
-					}
-				}
-				else
-				{
-					fw.write(w);
+					long from = position;
+					long to = DictionaryLoader.nextDelimiter(channel, Math.min(size, from + annotationChunkSize), size);
+					chunks.add(executor.submit(() -> {
+						RecordingSink chunk = new RecordingSink();
+						annotate(decodeChunk(channel, from, to), chunk);
+						return chunk;
+					}));
+					position = to;
 				}
 				
-				punct = !punct;
-				if(punct)
-					s.useDelimiter("[\\p{Alnum}]");
-				else
-					s.useDelimiter("[\\p{Punct}\\p{Space}]+");
+				RecordingSink chunk = chunks.removeFirst().get();
+				errorsNb += chunk.getMisspellings();
+				chunk.replay(sink);
 			}
-			fw.flush();
-			fw.close();
+			return errorsNb;
 		}
-		catch(IOException e)
+		catch(ExecutionException e)
 		{
-			System.err.println("Could not open the input file, or create the output file.");
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException("Could not anotate "+input.getAbsolutePath(), e.getCause());
 		}
-		catch(NoSuchElementException ex)
+		catch(InterruptedException e)
 		{
-			System.out.println("The file is empty.");
-			output.delete();
-			System.exit(0);
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while anotating "+input.getAbsolutePath(), e);
 		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Decodes a chunk of a UTF-8 file, memory-mapping it when possible
+	 * @return a reader over the decoded chunk
+	 */
+	private static Reader decodeChunk(FileChannel channel, long from, long to) throws IOException
+	{
+		ByteBuffer bytes;
+		try
+		{
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to-from);
+		}
+		catch(IOException | UnsupportedOperationException e)
+		{
+			bytes = ByteBuffer.allocate((int)(to-from));
+			while(bytes.hasRemaining() && channel.read(bytes, from+bytes.position()) > 0);
+			bytes.flip();
+		}
+		CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+		return new CharArrayReader(chars.array(), chars.arrayOffset()+chars.position(), chars.remaining());
+	}
+	
+	/**
+	 * Anotates a text with the current dictionary, in a single pass: each unknown word is sent to the sink with its propositions (provided by getNearestSiblings),
+	 * and the rest of the text is sent as is.
+	 * @param in the text to anotate
+	 * @param sink the sink receiving the anotated text
+	 * @return the number of errors found
+	 * @throws IOException if the text can't be read, or the sink can't write it
+	 */
+	public int annotate(Reader in, AnnotationSink sink) throws IOException
+	{
+		if(segmentDetection && dictionaries.length > 1) return annotateSegments(in, sink);
 		
-		System.out.println("Done.");
+		int errorsNb = 0;
+		TextTokenizer tokenizer = new TextTokenizer(in);
+		TextTokenizer.TokenType type;
+		while((type = tokenizer.next()) != null)
+		{
+			errorsNb += annotateToken(type, tokenizer.getToken(), currentDictionary, sink);
+		}
+		return errorsNb;
+	}
+	
+	/**
+	 * Anotates a text paragraph by paragraph, with the dictionary chosen for each paragraph. The tokens of a paragraph are kept until its dictionary is chosen,
+	 * and the rest of the paragraph is anotated as it is read.
+	 */
+	private int annotateSegments(Reader in, AnnotationSink sink) throws IOException
+	{
+		int errorsNb = 0;
+		TextTokenizer tokenizer = new TextTokenizer(in);
+		PendingTokens pending = new PendingTokens();
+		LanguageDetector.Sample sample = languageDetector.newSample();
+		TextTokenizer.TokenType type;
+		while((type = tokenizer.next()) != null)
+		{
+			CharSequence token = tokenizer.getToken();
+			if(sample.isDecided())
+			{
+				errorsNb += annotateToken(type, token, segmentDictionary(sample), sink);
+			}
+			else
+			{
+				pending.add(type, token);
+				if(type == TextTokenizer.TokenType.WORD && sample.offer(token))
+				{
+					errorsNb += annotatePending(pending, segmentDictionary(sample), sink);
+				}
+			}
+			
+			// A blank line ends the paragraph
+			if(type == TextTokenizer.TokenType.SEPARATOR && isParagraphBreak(token))
+			{
+				errorsNb += annotatePending(pending, segmentDictionary(sample), sink);
+				sample = languageDetector.newSample();
+			}
+		}
+		errorsNb += annotatePending(pending, segmentDictionary(sample), sink);
 		return errorsNb;
 	}
 	
+	private Dictionary segmentDictionary(LanguageDetector.Sample sample)
+	{
+		int best = sample.getBest();
+		return best == -1 ? currentDictionary : dictionaries[best];
+	}
+	
+	private static boolean isParagraphBreak(CharSequence separator)
+	{
+		int lines = 0;
+		for(int i = 0; i < separator.length(); i++)
+		{
+			if(separator.charAt(i) == '\n' && ++lines == 2) return true;
+		}
+		return false;
+	}
+	
+	private static int annotatePending(PendingTokens pending, Dictionary dictionary, AnnotationSink sink) throws IOException
+	{
+		return pending.flush((type, token) -> annotateToken(type, token, dictionary, sink));
+	}
+	
+	/**
+	 * Sends a token to the sink, with the propositions of the dictionary if it is an unknown word
+	 * @return 1 if the token is an unknown word, 0 otherwise
+	 */
+	private static int annotateToken(TextTokenizer.TokenType type, CharSequence token, Dictionary dictionary, AnnotationSink sink) throws IOException
+	{
+		if(type == TextTokenizer.TokenType.WORD && !dictionary.containsWord(token))
+		{
+			String word = token.toString();
+			sink.misspelling(word, dictionary.getNearestSiblings(word), dictionary);
+			return 1;
+		}
+		sink.text(token);
+		return 0;
+	}
+	
+	
+	/**
+	 * Checks a text with the current dictionary, without any interaction.
+	 * @param in the text to check
+	 * @return the unknown words of the text, in order, with their offset and their propositions
+	 * @throws IOException if the text can't be read
+	 */
+	public List<Misspelling> check(Reader in) throws IOException
+	{
+		MisspellingCollector collector = new MisspellingCollector();
+		annotate(in, collector);
+		return collector.getMisspellings();
+	}
+	
+	/**
+	 * Checks a text with the given dictionary, without any interaction. The current dictionary of the Corrector isn't used nor changed,
+	 * so several threads can check texts at the same time.
+	 * @param in the text to check
+	 * @param dictionary the dictionary to check the text with
+	 * @return the unknown words of the text, in order, with their offset and their propositions
+	 * @throws IOException if the text can't be read
+	 */
+	public List<Misspelling> check(Reader in, Dictionary dictionary) throws IOException
+	{
+		MisspellingCollector collector = new MisspellingCollector();
+		TextTokenizer tokenizer = new TextTokenizer(in);
+		TextTokenizer.TokenType type;
+		while((type = tokenizer.next()) != null)
+		{
+			annotateToken(type, tokenizer.getToken(), dictionary, collector);
+		}
+		return collector.getMisspellings();
+	}
+	
+	/**
+	 * Checks a UTF-8 text file without any interaction. As for {@link #correctFile(File)}, the best dictionary for the file is selected first and becomes the current dictionary.
+	 * Large files are checked in parallel chunks (see {@link #annotate(File, AnnotationSink)}).
+	 * @param f the text file to check
+	 * @return the unknown words of the file, in order, with their offset and their propositions
+	 * @throws IOException if the file can't be read
+	 */
+	public List<Misspelling> check(File f) throws IOException
+	{
+		detectDictionary(f);
+		MisspellingCollector collector = new MisspellingCollector();
+		annotate(f, collector);
+		return collector.getMisspellings();
+	}
 	
 	/**
-	 * Opens an anotated file and launches the correction process
-	 * @param f the anotated file
+	 * Corrects a UTF-8 text file interactively, in a single pass. The words at the beginning of the file are sampled to select the best dictionary for it,
+	 * which becomes the current dictionary, then the file is corrected line by line as it is read: only the current line is kept in memory.
+	 * <br><br>
+	 * The corrected text is written to a temporary file next to the original one, forced to the disk, then renamed over it (atomically when the file system
+	 * supports it): the original file is never left half written. The file isn't modified if it has no error.
+	 * @param f the text file to correct
 	 */
 	public void correctFile(File f)
 	{
-		File anotatedText = new File(f.getAbsolutePath()+".anot");
-		List<String> customWords = new LinkedList<>();
+		if(f.length() == 0)
+		{
+			System.out.println("The file is empty.");
+			return;
+		}
 		
-		selectBestDictionary(f);
-		int errorsNb = annotateText(f, anotatedText);
+		File corrected = new File(f.getAbsolutePath()+".tmp");
+		int errorsNb = 0;
+		try(Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8));
+			Scanner input = new Scanner(System.in);
+			FileOutputStream file = new FileOutputStream(corrected);
+			Writer out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8)))
+		{
+			errorsNb = correctText(f, in, new LineCorrection(input, out));
+			out.flush();
+			file.getFD().sync();
+		}
+		catch(FileNotFoundException e)
+		{
+			System.err.println("Could not open the file, or create the corrected file.");
+			corrected.delete();
+			return;
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not correct the file: "+e.getMessage());
+			corrected.delete();
+			return;
+		}
 		
-		if(errorsNb > 0)
-		{ 
-			System.out.println("Launching correction");
-			try(Scanner s = new Scanner(anotatedText, StandardCharsets.UTF_8.name()); 
-				Scanner input = new Scanner(System.in);
-				FileWriter fw = new FileWriter(f.getAbsolutePath()+".tmp", true);
-				BufferedWriter bw = new BufferedWriter(fw);
-				PrintWriter out = new PrintWriter(bw))
-				{
-					while(s.hasNextLine())
-					{
-						String line = s.nextLine();
-						List<List<String>> errors = new LinkedList<List<String>>();
-						
-						String displayLine = buildDisplayLine(line, errors, customWords);
-						
-						displayLine = correctLine(displayLine, errors, input, customWords);
-
-						out.println(displayLine);
-					}
-					out.flush();
-				} 
-				catch (FileNotFoundException e)
-				{
-					System.out.println("Could not open the anotated text!");
-				} 
-				catch (IOException e1) 
-				{
-					System.err.println("ERROR");
-					e1.printStackTrace();
-					System.exit(-1);
-				}
-				
-				f.delete();
-				File outputFile = new File(f.getAbsolutePath()+".tmp");
-				outputFile.renameTo(f);
+		try
+		{
+			if(errorsNb > 0) replace(corrected, f);
+			else corrected.delete();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not replace the file, the corrected text is kept in "+corrected.getAbsolutePath()+": "+e.getMessage());
+			return;
 		}
 		
-		anotatedText.delete();
 		ScreenUtils.clearScreen();
 		System.out.println("Correction du fichier terminée.");
 		if(errorsNb == 0)
 			System.out.println("(pas d'erreur trouvée)");
 	}
 	
+	/**
+	 * Tokenizes a text once: the tokens read while its dictionary is chosen are kept, then corrected with the rest of the text.
+	 * @return the number of errors found
+	 */
+	private int correctText(File f, Reader in, LineCorrection correction) throws IOException
+	{
+		TextTokenizer tokenizer = new TextTokenizer(in);
+		LanguageDetector.Sample sample = languageDetector.newSample();
+		PendingTokens pending = new PendingTokens();
+		int errorsNb = 0;
+		TextTokenizer.TokenType type;
+		while((type = tokenizer.next()) != null)
+		{
+			CharSequence token = tokenizer.getToken();
+			if(pending == null)
+			{
+				errorsNb += correction.token(type, token);
+				continue;
+			}
+			
+			pending.add(type, token);
+			if(type == TextTokenizer.TokenType.WORD && sample.offer(token))
+			{
+				selectDictionary(f, sample);
+				errorsNb += pending.flush(correction::token);
+				pending = null;
+			}
+		}
+		if(pending != null)
+		{
+			selectDictionary(f, sample);
+			errorsNb += pending.flush(correction::token);
+		}
+		correction.endLine();
+		return errorsNb;
+	}
+	
+	private void selectDictionary(File f, LanguageDetector.Sample sample)
+	{
+		this.currentDictionary = dictionaries[Math.max(sample.getBest(), 0)];
+		System.out.println("Best dictionary for the text \""+f.getName()+"\" is "+currentDictionary.getName()+" ("+sample.getSize()+" words sampled)");
+	}
+	
+	/**
+	 * Renames the corrected file over the original one
+	 */
+	private static void replace(File corrected, File f) throws IOException
+	{
+		try
+		{
+			Files.move(corrected.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(corrected.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Receiver of the tokens of a text
+	 */
+	@FunctionalInterface
+	private interface TokenHandler
+	{
+		/**
+		 * Handles a token
+		 * @return the number of errors found in the token
+		 */
+		int token(TextTokenizer.TokenType type, CharSequence token) throws IOException;
+	}
+	
+	/**
+	 * The tokens of a text kept while its dictionary is chosen, with their types.
+	 */
+	private static final class PendingTokens
+	{
+		private final List<TextTokenizer.TokenType> types = new ArrayList<>();
+		private final List<String> tokens = new ArrayList<>();
+		
+		void add(TextTokenizer.TokenType type, CharSequence token)
+		{
+			types.add(type);
+			tokens.add(token.toString());
+		}
+		
+		/**
+		 * Sends the tokens kept to a handler, in the order of the text, and forgets them
+		 * @return the number of errors found by the handler
+		 */
+		int flush(TokenHandler handler) throws IOException
+		{
+			int errorsNb = 0;
+			for(int i = 0; i < tokens.size(); i++) errorsNb += handler.token(types.get(i), tokens.get(i));
+			types.clear();
+			tokens.clear();
+			return errorsNb;
+		}
+	}
+	
+	/**
+	 * The correction of a text in progress: the tokens are gathered into the current line, which is corrected and written at each line break.
+	 */
+	private final class LineCorrection
+	{
+		private final Scanner input;
+		private final Writer out;
+		private final List<String> customWords = new LinkedList<>();
+		private CorrectionLine line = new CorrectionLine();
+		
+		LineCorrection(Scanner input, Writer out)
+		{
+			this.input = input;
+			this.out = out;
+		}
+		
+		/**
+		 * Adds a token to the current line, writing the lines it ends
+		 * @return 1 if the token is an unknown word, 0 otherwise
+		 */
+		int token(TextTokenizer.TokenType type, CharSequence token) throws IOException
+		{
+			if(type == TextTokenizer.TokenType.WORD)
+			{
+				if(currentDictionary.containsWord(token))
+				{
+					line.appendText(token);
+					return 0;
+				}
+				String word = token.toString();
+				line.appendError(word, currentDictionary.getNearestSiblings(word));
+				return 1;
+			}
+			
+			// A separator may end several lines
+			int start = 0;
+			for(int i = 0; i < token.length(); i++)
+			{
+				if(token.charAt(i) != '\n') continue;
+				line.appendText(token.subSequence(start, i+1));
+				endLine();
+				start = i+1;
+			}
+			line.appendText(token.subSequence(start, token.length()));
+			return 0;
+		}
+		
+		void endLine() throws IOException
+		{
+			correctLine(line, input, customWords);
+			out.write(line.toString());
+			line = new CorrectionLine();
+		}
+	}
+	
 	/**
 	 * Returns the choice entered by the user
 	 * @param input the Scanner used to read the input
@@ -286,135 +629,71 @@ public class Corrector
 	}
 	
 	/**
-	 * Corrects a line, error by error.
-	 * @param displayLine the formatted line to display
-	 * @param errors a list containing for each error the list of propositions
+	 * Corrects a line, error by error. The unknown words ignored for this session, or added to the dictionary since the line was anotated, are kept as they are.
+	 * @param line the line to correct, whose errors are resolved with the choices of the user
 	 * @param input the scanner input to read user's answers
 	 * @param customWords the list of the ignored words for this session
-	 * @return the corrected line
 	 */
-	private String correctLine(String displayLine, List<List<String>> errors, Scanner input, List<String> customWords)
+	private void correctLine(CorrectionLine line, Scanner input, List<String> customWords)
 	{
-		for(List<String> words : errors)
+		for(CorrectionLine.Error error : line.getErrors())
 		{
-			if(customWords.contains(words.get(0).toLowerCase()) || currentDictionary.containsWord(words.get(0)))
+			String word = error.getWord();
+			if(error.isResolved() || customWords.contains(word.toLowerCase()) || currentDictionary.containsWord(word))
 			{
+				if(!error.isResolved()) error.keep();
 				continue;
 			}
 			
-			displayPropositions(displayLine, words);
+			displayPropositions(line, error);
 			int choice = getChoice(input);
-			if(choice < words.size()-1)
+			String[] suggestions = error.getSuggestions();
+			if(choice < suggestions.length)
 			{
-				displayLine = displayLine.replaceFirst("\\*\\*"+words.get(0)+"\\*\\*", words.get(choice+1));
+				error.replace(suggestions[choice]);
+				currentDictionary.siblingChosen(word, suggestions[choice]);
 			}
 			// Ignore
-			else if(choice == words.size()-1)
+			else if(choice == suggestions.length)
 			{
-				displayLine = displayLine.replaceFirst("\\*\\*"+words.get(0)+"\\*\\*", words.get(0));
+				error.keep();
 			}
 			// Ignore all
-			else if(choice == words.size())
+			else if(choice == suggestions.length+1)
 			{
-				displayLine = displayLine.replaceAll("\\*\\*"+words.get(0)+"\\*\\*", words.get(0));
-				displayLine = displayLine.replaceAll("\\*\\*"+words.get(0).toLowerCase()+"\\*\\*", words.get(0).toLowerCase());
-				customWords.add(words.get(0).toLowerCase());
+				line.keepAll(word);
+				customWords.add(word.toLowerCase());
 			}
 			// Add to dictionary
-			else if(choice == words.size()+1)
+			else if(choice == suggestions.length+2)
 			{
-				displayLine = displayLine.replaceAll("\\*\\*"+words.get(0)+"\\*\\*", words.get(0));
-				displayLine = displayLine.replaceAll("\\*\\*"+words.get(0).toLowerCase()+"\\*\\*", words.get(0).toLowerCase());
-				currentDictionary.addToDictionary(words.get(0));
+				line.keepAll(word);
+				currentDictionary.addToDictionary(word);
 			}
 		}
-		
-		return displayLine;
 	}
 	
 	/**
 	 * Displays the correction menu
-	 * @param displayLine the formatted line to display
-	 * @param words the list words to ignore for this session
+	 * @param line the line being corrected
+	 * @param error the error to correct
 	 */
-	private void displayPropositions(String displayLine, List<String> words)
+	private void displayPropositions(CorrectionLine line, CorrectionLine.Error error)
 	{
 		ScreenUtils.clearScreen();
-		System.out.println(displayLine);
-		String error = words.get(0);
-		System.out.println("Word : "+error);
+		System.out.println(line.toDisplayString());
+		System.out.println("Word : "+error.getWord());
 		System.out.println("Propositions :");
+		String[] suggestions = error.getSuggestions();
 		int i = 0;
-		for(String word : words)
+		for(String word : suggestions)
 		{
-			if(i==0) 
-			{
-				i++;
-				continue;
-			}
-			System.out.println(i-1+" - replace with "+word);
+			System.out.println(i+" - replace with "+word);
 			i++;
 		}
-		System.out.println(i-1+" - ignore this word"); i++;
-		System.out.println(i-1+" - ignore all occurences this word"); i++;
-		System.out.println(i-1+" - add \""+error+"\" to dictionary");
-	}
-	
-	/**
-	 * Builds the formatted line to display from the line read in the anotated file
-	 * @param line the original line
-	 * @param errors a list containing for each error the list of propositions
-	 * @param customWords the list of the ignored words for this session
-	 * @return the formatted string
-	 */
-	private String buildDisplayLine(String line, List<List<String>> errors, List<String> customWords)
-	{
-		String displayLine = "";
-		
-		int firstOc;
-		int lastIndex = 0;
-		do
-		{
-			firstOc = line.indexOf("<spell>", lastIndex);
-			
-			// Si on a trouvé une occurence
-			if(firstOc != -1)
-			{
-				// Avant l'occurence
-				displayLine+= line.substring(lastIndex, firstOc);
-				// Le mot dans <spell>
-				lastIndex = firstOc+"<spell>".length();
-				int endOfWord = line.indexOf("|", lastIndex);
-				
-				String word = line.substring(lastIndex, endOfWord);
-				
-				if(!customWords.contains(word.toLowerCase()) && !currentDictionary.containsWord(word))
-				{
-					List<String> words = new ArrayList<String>();
-					words.add(word);
-					words.addAll(Arrays.asList(line.substring(endOfWord+1, line.indexOf("</spell>", endOfWord+1)).split(",")));
-					errors.add(words);
-					
-					displayLine+= "**"+word+"**";
-				}
-				else
-				{
-					displayLine+=word;
-				}
-				
-				
-				lastIndex = line.indexOf("</spell>", endOfWord)+"</spell>".length();
-				
-			}
-			else
-			{
-				displayLine+= line.substring(lastIndex);
-				break;
-			}
-		}
-		while(firstOc != -1);
-		
-		return displayLine;
+		System.out.println(i+" - ignore this word"); i++;
+		System.out.println(i+" - ignore all occurences this word"); i++;
+		System.out.println(i+" - add \""+error.getWord()+"\" to dictionary");
 	}
 	
 	/**
@@ -1,29 +1,40 @@
 package jspell;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.function.Function;
 
+import jspell.modules.InstrumentedModule;
 import jspell.modules.Module;
 import jspell.modules.ModuleAggregator;
 
 /**
  * Class used to represent a Dictionary.
- *
+ * <br><br>
+ * A dictionary can be used by several threads. The lookups and the searches never lock: only the additions of words are serialized.
+ * A new word is first added to the indexes of the modules, then published in the {@link WordStore}, and the siblings found by the modules are filtered
+ * against the published words. A word thus becomes known and proposed at the same time, once it is in every index.
+ * <br><br>
+ * The lookups, the searches and the searching modules are measured in the {@link DictionaryMetrics} of the dictionary when the {@link Metrics} are enabled.
  */
 public class Dictionary 
 {
+	private static final String NGRAM_PROFILE_SECTION = "ngrams";
+	
 	/**
-	 * the words contained in the dictionary
+	 * the words contained in the dictionary, with their number of occurrences
 	 */
-	private final HashMap<String, Integer> words;
+	private final WordStore words;
 	/**
 	 * the dictionary name
 	 */
@@ -45,6 +56,36 @@ public class Dictionary
 	 */
 	private final Locale locale;
 	
+	/**
+	 * the siblings already found for unknown words
+	 */
+	private final SuggestionCache suggestionCache;
+	
+	/**
+	 * the module sections of the binary snapshot the dictionary has been loaded from, only available while the modules are built
+	 */
+	private Map<String, ByteBuffer> snapshotSections;
+	
+	/**
+	 * the character trigram profile of the words, built on first use
+	 */
+	private volatile NgramProfile ngramProfile;
+	
+	/**
+	 * serializes the modifications of the words and of the modules indexes
+	 */
+	private final Object writeLock = new Object();
+	
+	/**
+	 * the journal of the words added to the dictionary
+	 */
+	private final DictionaryJournal journal;
+	
+	/**
+	 * the latency of the lookups and of the searches, and the metrics of the modules
+	 */
+	private final DictionaryMetrics metrics;
+	
 	/**
 	 * Complete constructor for Dictionary.
 	 * @param name name of the dictionary
@@ -54,12 +95,87 @@ public class Dictionary
 	 */
 	public Dictionary(String name, File f, Locale locale) throws FileNotFoundException
 	{
-		words = new HashMap<>();
-		buildWordsList(f);
+		this(name, f, locale, ModuleAggregator::new);
+	}
+	
+	/**
+	 * Constructor for Dictionary using a custom searching module.
+	 * @param name name of the dictionary
+	 * @param f the dictionary file containing the words
+	 * @param locale the associated locale
+	 * @param searcherFactory builds the searching module of the dictionary, once its words are loaded
+	 * @throws FileNotFoundException if the file isn't found
+	 */
+	public Dictionary(String name, File f, Locale locale, Function<Dictionary, Module> searcherFactory) throws FileNotFoundException
+	{
+		this(name, f, locale, searcherFactory, true);
+	}
+	
+	/**
+	 * Constructor for Dictionary. When allowed, the words and the modules indexes are loaded from the binary snapshot of the file (see {@link DictionarySnapshot})
+	 * if it is up to date. An outdated snapshot is rebuilt.
+	 * @param name name of the dictionary
+	 * @param f the dictionary file containing the words
+	 * @param locale the associated locale
+	 * @param searcherFactory builds the searching module of the dictionary, once its words are loaded
+	 * @param useSnapshot true to use the binary snapshot of the file
+	 * @throws FileNotFoundException if the file isn't found
+	 */
+	Dictionary(String name, File f, Locale locale, Function<Dictionary, Module> searcherFactory, boolean useSnapshot) throws FileNotFoundException
+	{
 		this.file = f;
 		this.name = name;
 		this.locale = locale;
-		this.siblingsSearcher = new ModuleAggregator(this);
+		
+		DictionarySnapshot snapshot = useSnapshot ? readSnapshot() : null;
+		if(snapshot != null)
+		{
+			words = snapshot.getWords();
+			snapshotSections = snapshot.getSections();
+			ByteBuffer profile = getSnapshotSection(NGRAM_PROFILE_SECTION);
+			if(profile != null) ngramProfile = NgramProfile.readFrom(profile);
+		}
+		else
+		{
+			words = buildWordsList(f);
+		}
+		
+		// The words added since the last compaction of the journal. The modules built from the words of the file get them directly,
+		// the indexes read from the snapshot are updated afterwards
+		List<String> journaled = readJournal();
+		if(snapshot == null) for(String word : journaled) words.add(word, 1);
+		this.siblingsSearcher = InstrumentedModule.instrument(searcherFactory.apply(this));
+		this.metrics = new DictionaryMetrics(this, InstrumentedModule.find(siblingsSearcher));
+		if(snapshot != null)
+		{
+			for(String word : journaled)
+			{
+				if(!words.contains(word))
+				{
+					siblingsSearcher.updateModule(word);
+					addToNgramProfile(word);
+				}
+				words.add(word, 1);
+			}
+		}
+		this.journal = new DictionaryJournal(this, journaled.size());
+		this.suggestionCache = new SuggestionCache(SuggestionCache.DEFAULT_CAPACITY);
+		snapshotSections = null;
+		
+		// Snapshots are only created by the DictionaryCompiler, but kept up to date once they exist
+		if(useSnapshot && snapshot == null && DictionarySnapshot.fileFor(f).exists())
+		{
+			try
+			{
+				// The snapshot is written by the compaction, so that the journaled words aren't counted twice at the next launch
+				if(journaled.isEmpty()) DictionarySnapshot.write(this);
+				else journal.compact();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Can't rebuild the dictionary snapshot "+DictionarySnapshot.fileFor(f).getAbsolutePath()+": "+e.getMessage());
+			}
+		}
 	}
 	
 	/**
@@ -74,43 +190,73 @@ public class Dictionary
 	}
 	
 	/**
-	 * Loads the words of the file into the Dictionary
+	 * Reads the binary snapshot of the dictionary file
+	 * @return the snapshot, or null if it doesn't exist, is outdated or can't be read
+	 */
+	private DictionarySnapshot readSnapshot()
+	{
+		try
+		{
+			return DictionarySnapshot.read(file, locale);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Can't read the dictionary snapshot, loading "+file.getAbsolutePath()+" instead: "+e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads the words of the journal of the dictionary
+	 * @return the words added since the last compaction of the journal
+	 */
+	private List<String> readJournal()
+	{
+		try
+		{
+			return DictionaryJournal.readPending(file);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Can't read the dictionary journal "+DictionaryJournal.fileFor(file).getAbsolutePath(), e);
+		}
+	}
+	
+	/**
+	 * Loads the words of the file into the Dictionary (see {@link DictionaryLoader})
 	 * @param f the dictionary file
+	 * @return the words of the file
 	 * @throws FileNotFoundException if the file isn't found
 	 */
-	private void buildWordsList(File f) throws FileNotFoundException
+	private static WordStore buildWordsList(File f) throws FileNotFoundException
 	{
-		try(Scanner s = new Scanner(f, StandardCharsets.UTF_8.name()))
+		try
 		{
-			s.useDelimiter("[\\p{Punct}\\p{Space}]");
-			while(s.hasNext())
-			{
-				String w = s.next();
-				if(!w.isEmpty())
-				{
-					w = w.toLowerCase();
-					Integer occurences = words.get(w);
-					if(occurences == null)
-					{
-						words.put(w, 1);
-					}
-					else
-					{
-						words.put(w, occurences+1);
-					}
-				}
-			}
+			return DictionaryLoader.load(f);
+		}
+		catch(FileNotFoundException e)
+		{
+			throw e;
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Can't read the dictionary file "+f.getAbsolutePath(), e);
 		}
 	}
 	
 	/**
-	 * Checks if the dictionary contains the given word
+	 * Checks if the dictionary contains the given word, ignoring its case
 	 * @param w the word to check
 	 * @return true if the Dictionary contains it, false otherwise
 	 */
-	public boolean containsWord(String w)
+	public boolean containsWord(CharSequence w)
 	{
-		return words.containsKey(w.toLowerCase());
+		if(!Metrics.isEnabled()) return words.contains(w);
+		
+		long start = System.nanoTime();
+		boolean found = words.contains(w);
+		metrics.recordLookup(System.nanoTime() - start);
+		return found;
 	}
 	
 	/**
@@ -124,13 +270,91 @@ public class Dictionary
 
 	/**
 	 * Getter for the words list of the dictionary
-	 * @return the words contained in the dictionary
+	 * @return a read-only view of the words contained in the dictionary, with their number of occurrences. Iterating over the view builds one String per word:
+	 * the modules keeping the words read them from the {@link #getWordStore()} by id instead.
+	 */
+	public Map<String, Integer> getWords() 
+	{
+		return words.asMap();
+	}
+	
+	/**
+	 * Getter for the compact store of the words of the dictionary, giving access to the words by id
+	 * @return the word store
 	 */
-	public HashMap<String, Integer> getWords() 
+	public WordStore getWordStore() 
 	{
 		return words;
 	}
 	
+	/**
+	 * Getter for the dictionary file
+	 * @return the dictionary file
+	 */
+	public File getFile() 
+	{
+		return file;
+	}
+	
+	/**
+	 * Returns a module section of the binary snapshot the dictionary is being loaded from. The sections are only available to the modules while they are built.
+	 * @param name the section name
+	 * @return the content of the section, or null if the dictionary isn't loaded from a snapshot or if the snapshot has no such section
+	 */
+	public ByteBuffer getSnapshotSection(String name)
+	{
+		if(snapshotSections == null) return null;
+		ByteBuffer section = snapshotSections.get(name);
+		return section == null ? null : section.duplicate();
+	}
+	
+	/**
+	 * Collects the precomputed data of the modules, to write them in a snapshot
+	 * @return the module sections, by name
+	 * @throws IOException if a module can't save its data
+	 */
+	Map<String, byte[]> saveIndexes() throws IOException
+	{
+		Map<String, byte[]> sections = new HashMap<>();
+		siblingsSearcher.saveIndex(sections);
+		
+		ByteArrayOutputStream profile = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(profile))
+		{
+			getNgramProfile().writeTo(out);
+		}
+		sections.put(NGRAM_PROFILE_SECTION, profile.toByteArray());
+		return sections;
+	}
+	
+	/**
+	 * Returns the character trigram profile of the words of the dictionary, used to recognize its language (see {@link LanguageDetector}).
+	 * The profile is read from the snapshot of the dictionary, or built on first use, and then updated with the words added to the dictionary.
+	 * @return the profile
+	 */
+	public NgramProfile getNgramProfile()
+	{
+		NgramProfile profile = ngramProfile;
+		if(profile == null)
+		{
+			synchronized(this)
+			{
+				profile = ngramProfile;
+				if(profile == null) ngramProfile = profile = NgramProfile.build(words);
+			}
+		}
+		return profile;
+	}
+	
+	/**
+	 * Adds the trigrams of a new word to the profile, if it is already built. The word must not be in the word store yet: a profile being built
+	 * from the word store holds the lock of the dictionary, and the word is then added to the built profile.
+	 */
+	private synchronized void addToNgramProfile(String word)
+	{
+		if(ngramProfile != null) ngramProfile = ngramProfile.with(word);
+	}
+	
 	/**
 	 * Getter for the dictionary Locale (Locale.US or Locale.FRENCH)
 	 * @return the dictionary Locale
@@ -147,39 +371,119 @@ public class Dictionary
 	 */
 	public double getProbability(String s)
 	{
-		Integer occurence = words.get(s);
-		if(occurence == null) return 0;
-		return (double)occurence/(double)words.size();
+		return (double)words.getFrequency(s)/(double)words.size();
 	}
 	
 	/**
-	 * Adds the given word to the Dictionary. The modification is propagated to the dictionary file.
+	 * Adds the given word to the Dictionary. The modification is saved in the journal of the dictionary (see {@link DictionaryJournal}),
+	 * and propagated to the dictionary file when the journal is compacted.
 	 * @param word the word to add
+	 * @throws UncheckedIOException if the journal can't be written with the {@link DictionaryJournal.Durability#SYNC} policy. The word is added anyway,
+	 * and written to the journal later.
 	 */
 	public void addToDictionary(String word)
 	{
 		word = word.toLowerCase();
-		words.put(word, 1);
-		siblingsSearcher.updateModule(word);
+		long sequence;
+		synchronized(writeLock)
+		{
+			// The modules first: the word is only visible once it is published in the word store
+			siblingsSearcher.updateModule(word);
+			if(!words.contains(word)) addToNgramProfile(word);
+			words.add(word, 1);
+			suggestionCache.invalidate();
+			sequence = journal.append(word);
+		}
+		journal.await(sequence);
+	}
+	
+	/**
+	 * Getter for the journal of the words added to the dictionary, to change its durability policy or compact it
+	 * @return the journal
+	 */
+	public DictionaryJournal getJournal() 
+	{
+		return journal;
+	}
+	
+	/**
+	 * Returns the lock serializing the modifications of the dictionary, held while a snapshot of the dictionary is written
+	 * @return the lock
+	 */
+	Object getWriteLock()
+	{
+		return writeLock;
+	}
+	
+	/**
+	 * Searches the nearest words for the given unknown word. The siblings of the recently searched words are kept in the {@link SuggestionCache} of the dictionary,
+	 * unless the answer of the modules is incomplete because one of them didn't answer in time (see {@link ModuleAggregator}): the next search may get all the answers.
+	 * @param word the unknown word
+	 * @return an array containing the nearest words.
+	 */
+	public String[] getNearestSiblings(String word)
+	{
+		if(!Metrics.isEnabled()) return searchSiblings(word);
 		
-		try 
+		long start = System.nanoTime();
+		String[] siblings = searchSiblings(word);
+		metrics.recordSuggestion(System.nanoTime() - start);
+		return siblings;
+	}
+	
+	private String[] searchSiblings(String word)
+	{
+		long generation = suggestionCache.getGeneration();
+		String[] siblings = suggestionCache.get(word);
+		if(siblings == null)
 		{
-		    Files.write(Paths.get(file.getAbsolutePath()), ("\r\n"+word).getBytes(), StandardOpenOption.APPEND);
+			ModuleAggregator.Answer answer = ModuleAggregator.answer(siblingsSearcher, word);
+			siblings = publishedWords(answer.getSiblings());
+			if(answer.isComplete()) suggestionCache.put(word, siblings, generation);
 		}
-		catch (IOException e) 
+		return siblings;
+	}
+	
+	/**
+	 * Removes from the siblings found by the modules the words which are still being added to the dictionary
+	 */
+	private String[] publishedWords(String[] siblings)
+	{
+		String[] published = new String[siblings.length];
+		int count = 0;
+		for(String sibling : siblings)
 		{
-			e.printStackTrace();
-			System.err.println("Can't write to the dictionary file "+file.getAbsolutePath());
+			if(sibling != null && words.contains(sibling)) published[count++] = sibling;
 		}
+		return count == siblings.length ? published : Arrays.copyOf(published, count);
 	}
 	
 	/**
-	 * Searches the nearest words for the given unknown word.
+	 * Notifies the dictionary that the user replaced an unknown word by one of its siblings, to measure which modules proposed it (see {@link DictionaryMetrics}).
+	 * Does nothing while the metrics are disabled.
 	 * @param word the unknown word
-	 * @return an array containing the nearest words.
+	 * @param sibling the sibling chosen
 	 */
-	public String[] getNearestSiblings(String word)
+	public void siblingChosen(String word, String sibling)
+	{
+		if(Metrics.isEnabled()) metrics.recordChoice(word, sibling);
+	}
+	
+	/**
+	 * Getter for the metrics of the dictionary and of its modules, recorded while the {@link Metrics} are enabled
+	 * @return the metrics
+	 */
+	public DictionaryMetrics getMetrics() 
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Getter for the cache of the siblings found for unknown words, to read its statistics or change its capacity
+	 * @return the suggestion cache
+	 */
+	public SuggestionCache getSuggestionCache() 
 	{
-		return siblingsSearcher.getNearestSiblings(word);
+		return suggestionCache;
 	}
 }
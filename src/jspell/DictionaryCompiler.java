@@ -0,0 +1,54 @@
+package jspell;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import jspell.modules.ModuleAggregator;
+
+/**
+ * Command line tool compiling dictionary text files into binary snapshots (see {@link DictionarySnapshot}).
+ * <br><br>
+ * Usage : java jspell.DictionaryCompiler [-fr] file...
+ * <br> The -fr option compiles the following files with Locale.FRENCH instead of Locale.US.
+ */
+public class DictionaryCompiler
+{
+	/**
+	 * Main method of the tool.
+	 * @param args the options and the dictionary files to compile
+	 */
+	public static void main(String[] args)
+	{
+		if(args.length == 0)
+		{
+			System.err.println("Usage : java jspell.DictionaryCompiler [-fr] file...");
+			System.exit(1);
+		}
+
+		Locale locale = Locale.US;
+		for(String arg : args)
+		{
+			if(arg.equals("-fr"))
+			{
+				locale = Locale.FRENCH;
+				continue;
+			}
+
+			File f = new File(arg);
+			try
+			{
+				long start = System.currentTimeMillis();
+				Dictionary d = new Dictionary(f.getName(), f, locale, ModuleAggregator::new, false);
+				// the journaled words go to the dictionary file first, so that they aren't replayed over the snapshot
+				d.getJournal().compact();
+				DictionarySnapshot.write(d);
+				System.out.println("Compiled "+d.getWordStore().size()+" words from \""+f.getPath()+"\" to \""+DictionarySnapshot.fileFor(f).getPath()+"\" in "+(System.currentTimeMillis()-start)+" ms");
+			}
+			catch(IOException e)
+			{
+				System.err.println("Could not compile \""+f.getPath()+"\": "+e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package jspell;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only journal of the words added to a {@link Dictionary}. The words are written by a background thread, in batches, instead of opening the dictionary file
+ * for each word: the thread adding a word only waits for the disk with the {@link Durability#SYNC} policy.
+ * <br><br>
+ * The journal of the dictionary file "english.txt" is the file "english.txt.journal", next to it, with one word per line. It is replayed when the dictionary is loaded,
+ * and compacted into the dictionary file (and its snapshot, if there is one) once it holds {@link #DEFAULT_COMPACTION_THRESHOLD} words, or when {@link #compact()}
+ * is called. A line which isn't complete, because the program stopped while it was written, is ignored.
+ * <br><br>
+ * When the journal can't be written, its words are kept and written again later, the background thread waiting longer after each failure, up to
+ * {@link #MAX_RETRY_DELAY}. A thread waiting for its word with the {@link Durability#SYNC} policy gets the error instead.
+ * <br><br>
+ * The compaction appends the words of the journal to the dictionary file before emptying the journal. If the program stops between the two, the dictionary file
+ * already ends with the words of the journal at the next launch: the journal is then emptied instead of being replayed, so that its words aren't added twice.
+ * <br><br>
+ * The pending words are written when the JVM stops.
+ */
+public class DictionaryJournal implements Closeable
+{
+	/**
+	 * When the added words are written to the disk
+	 */
+	public enum Durability
+	{
+		/**
+		 * The words are written at most every flush interval, and left to the operating system to be saved.
+		 */
+		LAZY,
+		/**
+		 * The words are written and forced to the disk as soon as possible, all the words added during a write being written together. The adding thread doesn't wait.
+		 */
+		BATCHED,
+		/**
+		 * As BATCHED, but the adding thread waits until its word is on the disk.
+		 */
+		SYNC
+	}
+
+	/**
+	 * Default maximum time between two writes with the {@link Durability#LAZY} policy, in milliseconds.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	/**
+	 * Default number of words of the journal above which it is compacted into the dictionary file.
+	 */
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+	/**
+	 * Time the background thread waits before writing the journal again after a first failure, in milliseconds. It doubles after each new failure.
+	 */
+	public static final long RETRY_DELAY = 100;
+
+	/**
+	 * Maximum time the background thread waits before writing the journal again after a failure, in milliseconds.
+	 */
+	public static final long MAX_RETRY_DELAY = 30000;
+
+	private final Dictionary dictionary;
+	private final File file;
+
+	/**
+	 * the words waiting to be written, the sequence numbers of the last word added, of the last word written and of the last word whose write failed
+	 * with its error, guarded by the journal
+	 */
+	private final List<String> pending;
+	private long appended;
+	private long written;
+	private long failed;
+	private IOException failure;
+	private boolean closed;
+	private Thread writer;
+
+	/**
+	 * the journal file and the number of words it contains, guarded by the file lock
+	 */
+	private final Object fileLock;
+	private FileChannel channel;
+	private int entries;
+
+	private volatile Durability durability;
+	private volatile long flushInterval;
+	private volatile int compactionThreshold;
+
+	/**
+	 * Constructor for DictionaryJournal.
+	 * @param dictionary the dictionary
+	 * @param entries the number of words already in the journal file
+	 */
+	DictionaryJournal(Dictionary dictionary, int entries)
+	{
+		this.dictionary = dictionary;
+		this.file = fileFor(dictionary.getFile());
+		this.pending = new ArrayList<>();
+		this.fileLock = new Object();
+		this.entries = entries;
+		this.durability = Durability.BATCHED;
+		this.flushInterval = DEFAULT_FLUSH_INTERVAL;
+		this.compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	}
+
+	/**
+	 * Returns the journal file associated to a dictionary file
+	 * @param source the dictionary text file
+	 * @return the journal file, which may not exist
+	 */
+	public static File fileFor(File source)
+	{
+		return new File(source.getPath()+".journal");
+	}
+
+	/**
+	 * Reads the words of the journal of a dictionary file which haven't been compacted into it. If the dictionary file already ends with the words of the journal,
+	 * the program stopped during a compaction after the dictionary file had been written: the journal is emptied instead of being replayed.
+	 * @param source the dictionary text file
+	 * @return the words added since the last compaction of the journal, in the order they have been added
+	 * @throws IOException if the journal exists but can't be read or emptied
+	 */
+	static List<String> readPending(File source) throws IOException
+	{
+		File file = fileFor(source);
+		List<String> words = read(file);
+		if(words.isEmpty() || !endsWith(source, compactedLines(words))) return words;
+
+		Files.delete(file.toPath());
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Reads the words of a journal file, ignoring its last line if it isn't complete
+	 * @param file the journal file
+	 * @return the words, in the order they have been added
+	 * @throws IOException if the file exists but can't be read
+	 */
+	static List<String> read(File file) throws IOException
+	{
+		List<String> words = new ArrayList<>();
+		if(!file.isFile()) return words;
+
+		String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		int start = 0;
+		for(int end = content.indexOf('\n'); end != -1; end = content.indexOf('\n', start))
+		{
+			if(end > start) words.add(content.substring(start, end));
+			start = end+1;
+		}
+		return words;
+	}
+
+	/**
+	 * Sets when the added words are written to the disk.
+	 * @param durability the durability policy
+	 */
+	public void setDurability(Durability durability)
+	{
+		this.durability = durability;
+	}
+
+	/**
+	 * Sets the maximum time between two writes with the {@link Durability#LAZY} policy.
+	 * @param flushInterval the time, in milliseconds
+	 */
+	public void setFlushInterval(long flushInterval)
+	{
+		if(flushInterval < 0) throw new IllegalArgumentException("The flush interval can't be negative");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Sets the number of words of the journal above which it is compacted into the dictionary file.
+	 * @param compactionThreshold the number of words
+	 */
+	public void setCompactionThreshold(int compactionThreshold)
+	{
+		if(compactionThreshold < 1) throw new IllegalArgumentException("The compaction threshold must be positive");
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Adds a word to the journal. The word is written later by the background thread.
+	 * @param word the word
+	 * @return the sequence number of the word, to wait for it with {@link #await(long)}
+	 */
+	synchronized long append(String word)
+	{
+		if(closed) throw new IllegalStateException("The journal of "+dictionary.getFile().getAbsolutePath()+" is closed");
+		if(writer == null)
+		{
+			writer = new Thread(this::writeLoop, "jspell-journal");
+			writer.setDaemon(true);
+			writer.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+		}
+		pending.add(word);
+		notifyAll();
+		return ++appended;
+	}
+
+	/**
+	 * Waits until the word of the given sequence number is written, with the {@link Durability#SYNC} policy. Returns immediately with the other policies.
+	 * @param sequence the sequence number returned by {@link #append(String)}
+	 * @throws UncheckedIOException if the word couldn't be written. It is kept, and written again later.
+	 */
+	synchronized void await(long sequence)
+	{
+		if(durability != Durability.SYNC) return;
+		try
+		{
+			while(written < sequence && failed < sequence && !closed) wait();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if(written < sequence && failure != null)
+		{
+			throw new UncheckedIOException("Can't write to the dictionary journal "+file.getAbsolutePath(), failure);
+		}
+	}
+
+	private void writeLoop()
+	{
+		long retryDelay = 0;
+		try
+		{
+			while(true)
+			{
+				synchronized(this)
+				{
+					while(pending.isEmpty() && !closed) wait();
+					// The words left are written by close()
+					if(closed) return;
+
+					// Waits after a failure, or lets the words accumulate during the flush interval
+					long interval = retryDelay > 0 ? retryDelay : durability == Durability.LAZY ? flushInterval : 0;
+					long deadline = System.currentTimeMillis() + interval;
+					for(long delay = interval; delay > 0 && !closed; delay = deadline - System.currentTimeMillis()) wait(delay);
+				}
+
+				try
+				{
+					flush();
+					if(entries >= compactionThreshold) compact();
+					retryDelay = 0;
+				}
+				catch(IOException e)
+				{
+					System.err.println("Can't write the dictionary journal "+file.getAbsolutePath()+": "+e.getMessage());
+					retryDelay = retryDelay == 0 ? RETRY_DELAY : Math.min(retryDelay*2, MAX_RETRY_DELAY);
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes the pending words to the journal file. If they can't be written, they are put back in front of the pending words and the waiting threads are told.
+	 * @throws IOException if the journal file can't be written
+	 */
+	private void flush() throws IOException
+	{
+		List<String> batch;
+		long sequence;
+		synchronized(this)
+		{
+			if(pending.isEmpty()) return;
+			batch = new ArrayList<>(pending);
+			pending.clear();
+			sequence = appended;
+		}
+
+		StringBuilder lines = new StringBuilder();
+		for(String word : batch) lines.append(word).append('\n');
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+		synchronized(fileLock)
+		{
+			try
+			{
+				if(channel == null) channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				long size = channel.size();
+				try
+				{
+					while(bytes.hasRemaining()) channel.write(bytes);
+					if(durability != Durability.LAZY) channel.force(false);
+				}
+				catch(IOException e)
+				{
+					// Removes the part of the batch already written, which is written again with the next batch
+					channel.truncate(size);
+					throw e;
+				}
+				entries += batch.size();
+			}
+			catch(IOException e)
+			{
+				synchronized(this)
+				{
+					pending.addAll(0, batch);
+					failed = Math.max(failed, sequence);
+					failure = e;
+					notifyAll();
+				}
+				throw e;
+			}
+		}
+
+		synchronized(this)
+		{
+			written = Math.max(written, sequence);
+			if(written >= failed) failure = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Compacts the journal: its words are appended to the dictionary file, the snapshot of the dictionary is rebuilt if there is one, and the journal is emptied.
+	 * No word can be added to the dictionary during the compaction. A compaction interrupted after the dictionary file has been written doesn't write it again.
+	 * @throws IOException if the journal, the dictionary file or the snapshot can't be written
+	 */
+	public void compact() throws IOException
+	{
+		synchronized(dictionary.getWriteLock())
+		{
+			// All the words of the dictionary are in the journal file once flushed
+			flush();
+			synchronized(fileLock)
+			{
+				List<String> words = read(file);
+				if(words.isEmpty()) return;
+
+				// The dictionary file is on the disk before the journal is emptied
+				byte[] lines = compactedLines(words);
+				File source = dictionary.getFile();
+				if(!endsWith(source, lines))
+				{
+					try(FileChannel out = FileChannel.open(Paths.get(source.getAbsolutePath()), StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+					{
+						ByteBuffer bytes = ByteBuffer.wrap(lines);
+						while(bytes.hasRemaining()) out.write(bytes);
+						out.force(false);
+					}
+				}
+				if(DictionarySnapshot.fileFor(source).exists()) DictionarySnapshot.write(dictionary);
+
+				if(channel == null) channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				channel.truncate(0);
+				channel.force(true);
+				entries = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the lines appended to the dictionary file by the compaction of words
+	 */
+	private static byte[] compactedLines(List<String> words)
+	{
+		StringBuilder lines = new StringBuilder();
+		for(String word : words) lines.append("\r\n").append(word);
+		return lines.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks if a file ends with the given bytes
+	 */
+	private static boolean endsWith(File f, byte[] bytes) throws IOException
+	{
+		try(RandomAccessFile in = new RandomAccessFile(f, "r"))
+		{
+			long start = in.length() - bytes.length;
+			if(start < 0) return false;
+			byte[] end = new byte[bytes.length];
+			in.seek(start);
+			in.readFully(end);
+			return Arrays.equals(end, bytes);
+		}
+	}
+
+	/**
+	 * Writes the pending words and stops the background thread. The journal is compacted if it has reached the compaction threshold.
+	 */
+	@Override
+	public void close()
+	{
+		Thread writer;
+		synchronized(this)
+		{
+			if(closed) return;
+			closed = true;
+			notifyAll();
+			writer = this.writer;
+		}
+
+		try
+		{
+			if(writer != null && writer != Thread.currentThread()) writer.join();
+			flush();
+			if(entries >= compactionThreshold) compact();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Can't write the dictionary journal "+file.getAbsolutePath()+": "+e.getMessage());
+		}
+		finally
+		{
+			synchronized(fileLock)
+			{
+				try
+				{
+					if(channel != null) channel.close();
+				}
+				catch(IOException e)
+				{
+					// nothing left to write
+				}
+			}
+		}
+	}
+}
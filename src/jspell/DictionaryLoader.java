@@ -0,0 +1,239 @@
+package jspell;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the words of a dictionary or corpus file, and counts their occurrences. The file is read in large byte buffers, split into words on the ASCII
+ * punctuation and space characters (see {@link TextTokenizer#isDelimiter(char)}), and only the words are decoded from UTF-8.
+ * <br><br>
+ * Files larger than {@link #PARALLEL_THRESHOLD} are split into chunks, cut on a delimiter, which are counted in parallel and merged in order: the word ids are the same
+ * as with a sequential load.
+ */
+public final class DictionaryLoader
+{
+	/**
+	 * Size of the buffers used to read the file.
+	 */
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Size of the files above which the file is loaded in parallel chunks.
+	 */
+	public static final long PARALLEL_THRESHOLD = 16L << 20;
+
+	private DictionaryLoader()
+	{
+
+	}
+
+	/**
+	 * Loads the words of a file, using all the available processors for large files.
+	 * @param f the file
+	 * @return the words and their number of occurrences
+	 * @throws FileNotFoundException if the file isn't found
+	 * @throws IOException if the file can't be read
+	 */
+	public static WordStore load(File f) throws IOException
+	{
+		return load(f, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Loads the words of a file.
+	 * @param f the file
+	 * @param parallelism the maximum number of threads used for large files
+	 * @return the words and their number of occurrences
+	 * @throws FileNotFoundException if the file isn't found
+	 * @throws IOException if the file can't be read
+	 */
+	public static WordStore load(File f, int parallelism) throws IOException
+	{
+		try(RandomAccessFile file = new RandomAccessFile(f, "r"); FileChannel channel = file.getChannel())
+		{
+			long size = channel.size();
+			WordStore words = new WordStore();
+			if(parallelism <= 1 || size < PARALLEL_THRESHOLD)
+			{
+				count(channel, 0, size, words);
+				return words;
+			}
+
+			/* chunks cut on a delimiter, so that no word is split */
+			int chunks = (int)Math.min(parallelism, size / (PARALLEL_THRESHOLD/4));
+			long[] bounds = new long[chunks+1];
+			bounds[chunks] = size;
+			for(int i = 1; i < chunks; i++)
+			{
+				bounds[i] = nextDelimiter(channel, Math.max(bounds[i-1], size*i/chunks), size);
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(chunks);
+			try
+			{
+				List<Future<WordStore>> counts = new ArrayList<>();
+				for(int i = 0; i < chunks; i++)
+				{
+					long from = bounds[i];
+					long to = bounds[i+1];
+					counts.add(executor.submit(() -> {
+						WordStore chunk = new WordStore();
+						count(channel, from, to, chunk);
+						return chunk;
+					}));
+				}
+				for(Future<WordStore> count : counts) words.addAll(count.get());
+			}
+			catch(ExecutionException e)
+			{
+				if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+				throw new IOException("Could not load "+f.getAbsolutePath(), e.getCause());
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading "+f.getAbsolutePath(), e);
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+			return words;
+		}
+	}
+
+	private static boolean isDelimiter(byte b)
+	{
+		return b >= 0 && TextTokenizer.isDelimiter((char)b);
+	}
+
+	/**
+	 * Returns the position of the first delimiter at or after the given position, or the size of the file if there is none.
+	 */
+	static long nextDelimiter(FileChannel channel, long position, long size) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while(position < size)
+		{
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0) break;
+			for(int i = 0; i < read; i++)
+			{
+				if(isDelimiter(buffer.get(i))) return position+i;
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Counts the words between two positions of the file, which must be at the start of a word or on a delimiter.
+	 */
+	private static void count(FileChannel channel, long from, long to, WordStore words) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, Math.max(to-from, 1)));
+		byte[] bytes = buffer.array();
+		byte[] token = new byte[64];
+		int tokenLength = 0;
+		StringBuilder word = new StringBuilder();
+
+		long position = from;
+		while(position < to)
+		{
+			buffer.clear();
+			buffer.limit((int)Math.min(buffer.capacity(), to-position));
+			int read = channel.read(buffer, position);
+			if(read <= 0) break;
+			position += read;
+
+			for(int i = 0; i < read; i++)
+			{
+				byte b = bytes[i];
+				if(isDelimiter(b))
+				{
+					if(tokenLength > 0)
+					{
+						decode(token, tokenLength, word);
+						words.add(word, 1);
+						tokenLength = 0;
+					}
+				}
+				else
+				{
+					if(tokenLength == token.length) token = Arrays.copyOf(token, token.length*2);
+					token[tokenLength++] = b;
+				}
+			}
+		}
+		if(tokenLength > 0)
+		{
+			decode(token, tokenLength, word);
+			words.add(word, 1);
+		}
+	}
+
+	private static boolean isContinuation(byte b)
+	{
+		return (b & 0xC0) == 0x80;
+	}
+
+	/**
+	 * Decodes UTF-8 bytes into the given builder, replacing malformed sequences with U+FFFD.
+	 */
+	static void decode(byte[] bytes, int length, StringBuilder out)
+	{
+		out.setLength(0);
+		int i = 0;
+		while(i < length)
+		{
+			int b = bytes[i] & 0xFF;
+			int codePoint = -1;
+			int sequence = 1;
+			if(b < 0x80)
+			{
+				codePoint = b;
+			}
+			else if((b >> 5) == 0x6 && i+1 < length && isContinuation(bytes[i+1]))
+			{
+				codePoint = ((b & 0x1F) << 6) | (bytes[i+1] & 0x3F);
+				sequence = 2;
+				if(codePoint < 0x80) codePoint = -1;
+			}
+			else if((b >> 4) == 0xE && i+2 < length && isContinuation(bytes[i+1]) && isContinuation(bytes[i+2]))
+			{
+				codePoint = ((b & 0x0F) << 12) | ((bytes[i+1] & 0x3F) << 6) | (bytes[i+2] & 0x3F);
+				sequence = 3;
+				if(codePoint < 0x800 || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) codePoint = -1;
+			}
+			else if((b >> 3) == 0x1E && i+3 < length && isContinuation(bytes[i+1]) && isContinuation(bytes[i+2]) && isContinuation(bytes[i+3]))
+			{
+				codePoint = ((b & 0x07) << 18) | ((bytes[i+1] & 0x3F) << 12) | ((bytes[i+2] & 0x3F) << 6) | (bytes[i+3] & 0x3F);
+				sequence = 4;
+				if(codePoint < 0x10000 || codePoint > 0x10FFFF) codePoint = -1;
+			}
+
+			if(codePoint == -1)
+			{
+				out.append('\uFFFD');
+				i++;
+			}
+			else
+			{
+				out.appendCodePoint(codePoint);
+				i += sequence;
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package jspell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import jspell.modules.InstrumentedModule;
+
+/**
+ * Latency of the lookups and of the searches of a dictionary, recorded while {@link Metrics} are enabled, with the statistics of its {@link SuggestionCache}
+ * and the metrics of its searching modules.
+ */
+public final class DictionaryMetrics implements DictionaryMetricsMXBean
+{
+	private final Dictionary dictionary;
+	private final List<InstrumentedModule> modules;
+	private final LatencyHistogram lookups = new LatencyHistogram();
+	private final LatencyHistogram suggestions = new LatencyHistogram();
+	private final LongAdder choices = new LongAdder();
+
+	/**
+	 * Constructor for DictionaryMetrics.
+	 * @param dictionary the measured dictionary
+	 * @param modules the instrumented modules of the dictionary
+	 */
+	DictionaryMetrics(Dictionary dictionary, List<InstrumentedModule> modules)
+	{
+		this.dictionary = dictionary;
+		this.modules = modules;
+	}
+
+	void recordLookup(long nanos)
+	{
+		lookups.record(nanos);
+	}
+
+	void recordSuggestion(long nanos)
+	{
+		suggestions.record(nanos);
+	}
+
+	/**
+	 * Records a sibling chosen by the user, and checks which modules proposed it
+	 */
+	void recordChoice(String word, String sibling)
+	{
+		choices.increment();
+		for(InstrumentedModule module : modules) module.siblingChosen(word, sibling);
+	}
+
+	/**
+	 * Returns the metrics of the searching modules of the dictionary, in the order of the {@link jspell.modules.ModuleAggregator}
+	 * @return the metrics of the modules
+	 */
+	public List<ModuleMetrics> getModules()
+	{
+		List<ModuleMetrics> metrics = new ArrayList<>();
+		for(InstrumentedModule module : modules) metrics.add(module.getMetrics());
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/**
+	 * Getter for the latency histogram of the lookups
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getLookupLatency()
+	{
+		return lookups;
+	}
+
+	/**
+	 * Getter for the latency histogram of the searches of siblings
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getSuggestionLatency()
+	{
+		return suggestions;
+	}
+
+	@Override
+	public String getName()
+	{
+		return dictionary.getName();
+	}
+
+	@Override
+	public int getWords()
+	{
+		return dictionary.getWordStore().size();
+	}
+
+	@Override
+	public long getLookups()
+	{
+		return lookups.getCount();
+	}
+
+	@Override
+	public double getMeanLookupLatency()
+	{
+		return lookups.getMean() / 1000;
+	}
+
+	@Override
+	public double getP99LookupLatency()
+	{
+		return lookups.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public long getSuggestions()
+	{
+		return suggestions.getCount();
+	}
+
+	@Override
+	public double getMeanSuggestionLatency()
+	{
+		return suggestions.getMean() / 1000;
+	}
+
+	@Override
+	public double getP50SuggestionLatency()
+	{
+		return suggestions.getPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP99SuggestionLatency()
+	{
+		return suggestions.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public long getCacheHits()
+	{
+		return dictionary.getSuggestionCache().getHits();
+	}
+
+	@Override
+	public long getCacheMisses()
+	{
+		return dictionary.getSuggestionCache().getMisses();
+	}
+
+	@Override
+	public double getCacheHitRate()
+	{
+		return dictionary.getSuggestionCache().getHitRate();
+	}
+
+	@Override
+	public long getChoices()
+	{
+		return choices.sum();
+	}
+}
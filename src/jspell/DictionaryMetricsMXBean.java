@@ -0,0 +1,86 @@
+package jspell;
+
+/**
+ * Management interface of the metrics of a dictionary, published in JMX by {@link Metrics#register(Dictionary)}.
+ * The durations are in microseconds.
+ */
+public interface DictionaryMetricsMXBean
+{
+	/**
+	 * Returns the name of the dictionary
+	 * @return the dictionary name
+	 */
+	public String getName();
+
+	/**
+	 * Returns the number of words of the dictionary
+	 * @return the words count
+	 */
+	public int getWords();
+
+	/**
+	 * Returns the number of lookups of a word in the dictionary
+	 * @return the lookups count
+	 */
+	public long getLookups();
+
+	/**
+	 * Returns the mean duration of the lookups
+	 * @return the mean lookup latency
+	 */
+	public double getMeanLookupLatency();
+
+	/**
+	 * Returns the 99th percentile of the duration of the lookups
+	 * @return the 99th percentile of the lookup latency
+	 */
+	public double getP99LookupLatency();
+
+	/**
+	 * Returns the number of searches of the siblings of an unknown word, answered by the cache or by the modules
+	 * @return the suggestions count
+	 */
+	public long getSuggestions();
+
+	/**
+	 * Returns the mean duration of the searches of siblings
+	 * @return the mean suggestion latency
+	 */
+	public double getMeanSuggestionLatency();
+
+	/**
+	 * Returns the median duration of the searches of siblings
+	 * @return the 50th percentile of the suggestion latency
+	 */
+	public double getP50SuggestionLatency();
+
+	/**
+	 * Returns the 99th percentile of the duration of the searches of siblings
+	 * @return the 99th percentile of the suggestion latency
+	 */
+	public double getP99SuggestionLatency();
+
+	/**
+	 * Returns the number of searches answered by the suggestion cache
+	 * @return the cache hits count
+	 */
+	public long getCacheHits();
+
+	/**
+	 * Returns the number of searches the suggestion cache couldn't answer
+	 * @return the cache misses count
+	 */
+	public long getCacheMisses();
+
+	/**
+	 * Returns the part of the searches answered by the suggestion cache
+	 * @return the cache hit rate, between 0 and 1
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * Returns the number of siblings chosen by the user during a correction
+	 * @return the choices count
+	 */
+	public long getChoices();
+}
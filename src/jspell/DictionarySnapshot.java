@@ -0,0 +1,166 @@
+package jspell;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link Dictionary}: its {@link WordStore} and the precomputed indexes of its modules, so that they don't have to be built again at each launch.
+ * The snapshot of the dictionary file "english.txt" is the file "english.txt.snap", next to it.
+ * <br><br>
+ * Format (big endian), version 3:
+ * <br> - magic number "JSPL" and version number
+ * <br> - length and last modification date of the text file the snapshot has been built from, and locale of the dictionary
+ * <br> - the word store (see {@link WordStore#writeTo(java.io.DataOutputStream)})
+ * <br> - the number of module sections, then for each one its name, its length and its content.
+ * <br><br>
+ * A snapshot is only used if it has been built from the current version of the text file, with the same locale. The file is memory-mapped when read:
+ * the word store arrays are copied in bulk from the mapping, and the module sections are read directly from it.
+ */
+public final class DictionarySnapshot
+{
+	private static final int MAGIC = 0x4A53504C;
+	private static final int VERSION = 3;
+
+	private final WordStore words;
+	private final Map<String, ByteBuffer> sections;
+
+	private DictionarySnapshot(WordStore words, Map<String, ByteBuffer> sections)
+	{
+		this.words = words;
+		this.sections = sections;
+	}
+
+	/**
+	 * Getter for the words of the snapshot
+	 * @return the word store
+	 */
+	WordStore getWords()
+	{
+		return words;
+	}
+
+	/**
+	 * Getter for the module sections of the snapshot
+	 * @return the sections, by name
+	 */
+	Map<String, ByteBuffer> getSections()
+	{
+		return sections;
+	}
+
+	/**
+	 * Returns the snapshot file associated to a dictionary file
+	 * @param source the dictionary text file
+	 * @return the snapshot file, which may not exist
+	 */
+	public static File fileFor(File source)
+	{
+		return new File(source.getPath()+".snap");
+	}
+
+	/**
+	 * Reads the snapshot of the given dictionary file, if it is up to date.
+	 * @param source the dictionary text file
+	 * @param locale the locale of the dictionary
+	 * @return the snapshot, or null if there is no snapshot, or if it has been built from another version of the file or with another locale
+	 * @throws IOException if the snapshot exists but can't be read
+	 */
+	static DictionarySnapshot read(File source, Locale locale) throws IOException
+	{
+		File file = fileFor(source);
+		if(!file.isFile()) return null;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(in.getInt() != MAGIC) throw new IOException("Not a dictionary snapshot: "+file.getAbsolutePath());
+			if(in.getInt() != VERSION) return null;
+			if(in.getLong() != source.length() || in.getLong() != source.lastModified()) return null;
+			if(!readString(in).equals(locale.toLanguageTag())) return null;
+
+			WordStore words = WordStore.readFrom(in);
+
+			Map<String, ByteBuffer> sections = new HashMap<>();
+			int count = in.getInt();
+			for(int i = 0; i < count; i++)
+			{
+				String name = readString(in);
+				int length = in.getInt();
+				ByteBuffer section = in.slice();
+				section.limit(length);
+				sections.put(name, section);
+				in.position(in.position() + length);
+			}
+			return new DictionarySnapshot(words, sections);
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("Corrupted dictionary snapshot: "+file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Writes the snapshot of a dictionary, next to its text file. The snapshot is written to a temporary file first, then moved over the previous one.
+	 * No word can be added to the dictionary while its snapshot is written.
+	 * @param dictionary the dictionary
+	 * @throws IOException if the snapshot can't be written
+	 */
+	public static void write(Dictionary dictionary) throws IOException
+	{
+		File source = dictionary.getFile();
+		File file = fileFor(source);
+		File tmp = new File(file.getPath()+".tmp");
+
+		// the words and the indexes must not change while they are written
+		synchronized(dictionary.getWriteLock())
+		{
+			Map<String, byte[]> sections = dictionary.saveIndexes();
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16)))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+				writeString(out, dictionary.getLocale().toLanguageTag());
+
+				dictionary.getWordStore().writeTo(out);
+
+				out.writeInt(sections.size());
+				for(Map.Entry<String, byte[]> section : sections.entrySet())
+				{
+					writeString(out, section.getKey());
+					out.writeInt(section.getValue().length);
+					out.write(section.getValue());
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,83 @@
+package jspell;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the JSON values of the machine-readable outputs ({@link BatchChecker}, {@link SpellServer}).
+ */
+final class Json
+{
+	private Json()
+	{
+
+	}
+
+	/**
+	 * Writes a string literal
+	 */
+	static void writeString(Writer out, String s) throws IOException
+	{
+		out.write('"');
+		for(int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch(c)
+			{
+				case '"': out.write("\\\""); break;
+				case '\\': out.write("\\\\"); break;
+				case '\n': out.write("\\n"); break;
+				case '\r': out.write("\\r"); break;
+				case '\t': out.write("\\t"); break;
+				default:
+					if(c < 0x20) out.write(String.format("\\u%04x", (int)c));
+					else out.write(c);
+			}
+		}
+		out.write('"');
+	}
+
+	/**
+	 * Writes an array of strings
+	 */
+	static void writeStrings(Writer out, String[] strings) throws IOException
+	{
+		out.write('[');
+		for(int i = 0; i < strings.length; i++)
+		{
+			if(i > 0) out.write(',');
+			writeString(out, strings[i]);
+		}
+		out.write(']');
+	}
+
+	/**
+	 * Writes the fields of a misspelling, without the braces of the object
+	 */
+	static void writeMisspellingFields(Writer out, Misspelling misspelling) throws IOException
+	{
+		out.write("\"offset\":"+misspelling.getOffset());
+		out.write(",\"length\":"+misspelling.getLength());
+		out.write(",\"word\":");
+		writeString(out, misspelling.getWord());
+		out.write(",\"suggestions\":");
+		writeStrings(out, misspelling.getSuggestions());
+	}
+
+	/**
+	 * Writes an array of misspelling objects
+	 */
+	static void writeMisspellings(Writer out, List<Misspelling> misspellings) throws IOException
+	{
+		out.write('[');
+		for(int i = 0; i < misspellings.size(); i++)
+		{
+			if(i > 0) out.write(',');
+			out.write('{');
+			writeMisspellingFields(out, misspellings.get(i));
+			out.write('}');
+		}
+		out.write(']');
+	}
+}
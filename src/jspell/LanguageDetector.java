@@ -0,0 +1,256 @@
+package jspell;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Finds the dictionary best suited to a text by sampling its words, instead of checking the whole text against every dictionary.
+ * <br><br>
+ * Each sampled word is a vote for the dictionaries containing it. The votes of two dictionaries only differ on the words known by one of them and not by the other,
+ * so the sampling stops as soon as the leading dictionary wins these words against every other dictionary by a clear margin (a sign test, see {@link #setThreshold(double)}),
+ * or when the maximum sample size is reached.
+ * <br><br>
+ * When the n-gram profiles are enabled, the words unknown to every dictionary (misspellings, proper nouns, ...) are also counted, as a vote for the dictionary whose
+ * {@link NgramProfile} gives them the best score.
+ */
+public class LanguageDetector
+{
+	/**
+	 * Minimum number of words sampled before deciding.
+	 */
+	public static final int MIN_SAMPLE = 20;
+
+	/**
+	 * Default maximum number of words sampled.
+	 */
+	public static final int DEFAULT_MAX_SAMPLE = 2000;
+
+	/**
+	 * Default margin needed to stop early, in standard deviations (a 0.1% risk of error).
+	 */
+	public static final double DEFAULT_THRESHOLD = 3.29;
+
+	private final Dictionary[] dictionaries;
+	private int maxSample = DEFAULT_MAX_SAMPLE;
+	private double threshold = DEFAULT_THRESHOLD;
+	private boolean useProfiles;
+
+	/**
+	 * Constructor for LanguageDetector.
+	 * @param dictionaries the candidate dictionaries
+	 */
+	public LanguageDetector(Dictionary... dictionaries)
+	{
+		if(dictionaries.length == 0) throw new IllegalArgumentException("Provide at least one dictionary to work with!");
+		this.dictionaries = dictionaries;
+	}
+
+	/**
+	 * Sets the maximum number of words sampled, after which the dictionary with the most votes is chosen.
+	 * @param maxSample the maximum number of words
+	 */
+	public void setMaxSample(int maxSample)
+	{
+		if(maxSample < 1) throw new IllegalArgumentException("The sample must contain at least one word");
+		this.maxSample = maxSample;
+	}
+
+	/**
+	 * Sets the margin needed to stop sampling early. With b the words known by the leading dictionary and not by another one, and c the words known by the other one
+	 * and not by the leading one, the leading dictionary wins when (b-c)/sqrt(b+c) reaches the threshold against every other dictionary.
+	 * @param threshold the margin, in standard deviations
+	 */
+	public void setThreshold(double threshold)
+	{
+		if(threshold <= 0) throw new IllegalArgumentException("The threshold must be positive");
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Enables the n-gram profiles of the dictionaries, to count the words unknown to every dictionary.
+	 * @param useProfiles true to use the profiles
+	 */
+	public void setUseProfiles(boolean useProfiles)
+	{
+		this.useProfiles = useProfiles;
+	}
+
+	/**
+	 * Getter for the candidate dictionaries
+	 * @return the dictionaries, indexed as in the samples
+	 */
+	public Dictionary[] getDictionaries()
+	{
+		return dictionaries.clone();
+	}
+
+	/**
+	 * Starts a new sample, to which the words of a text (or of a part of a text) are given one by one.
+	 * @return the sample
+	 */
+	public Sample newSample()
+	{
+		return new Sample();
+	}
+
+	/**
+	 * Samples the words at the beginning of a text, until a dictionary is chosen.
+	 * @param in the text
+	 * @return the sample
+	 * @throws IOException if the text can't be read
+	 */
+	public Sample detect(Reader in) throws IOException
+	{
+		Sample sample = newSample();
+		TextTokenizer tokenizer = new TextTokenizer(in);
+		TextTokenizer.TokenType type;
+		while((type = tokenizer.next()) != null)
+		{
+			if(type == TextTokenizer.TokenType.WORD && sample.offer(tokenizer.getToken())) break;
+		}
+		return sample;
+	}
+
+	/**
+	 * The votes of the words sampled from a text. A sample is used by a single thread.
+	 */
+	public class Sample
+	{
+		private final int[] votes;
+		/**
+		 * wins[i][j]: number of words counted for the dictionary i and not for the dictionary j
+		 */
+		private final int[][] wins;
+		private final boolean[] voters;
+		private int size;
+		private boolean significant;
+
+		private Sample()
+		{
+			votes = new int[dictionaries.length];
+			wins = new int[dictionaries.length][dictionaries.length];
+			voters = new boolean[dictionaries.length];
+		}
+
+		/**
+		 * Adds a word to the sample. The words given once the sample is decided are ignored.
+		 * @param word the word
+		 * @return true if the sample is decided
+		 */
+		public boolean offer(CharSequence word)
+		{
+			if(isDecided()) return true;
+			size++;
+
+			boolean known = false;
+			for(int i = 0; i < dictionaries.length; i++)
+			{
+				voters[i] = dictionaries[i].containsWord(word);
+				known |= voters[i];
+			}
+			if(!known)
+			{
+				if(!useProfiles) return isDecided();
+				voters[bestProfile(word)] = true;
+			}
+
+			for(int i = 0; i < dictionaries.length; i++)
+			{
+				if(!voters[i]) continue;
+				votes[i]++;
+				for(int j = 0; j < dictionaries.length; j++)
+				{
+					if(!voters[j]) wins[i][j]++;
+				}
+			}
+
+			if(size >= MIN_SAMPLE) significant = isSignificant(getBest());
+			return isDecided();
+		}
+
+		private int bestProfile(CharSequence word)
+		{
+			int best = 0;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < dictionaries.length; i++)
+			{
+				double score = dictionaries[i].getNgramProfile().score(word);
+				if(score > bestScore)
+				{
+					best = i;
+					bestScore = score;
+				}
+			}
+			return best;
+		}
+
+		private boolean isSignificant(int leader)
+		{
+			if(leader == -1) return false;
+			for(int j = 0; j < dictionaries.length; j++)
+			{
+				if(j == leader) continue;
+				int b = wins[leader][j];
+				int c = wins[j][leader];
+				if(b+c == 0 || (b-c) / Math.sqrt(b+c) < threshold) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Checks if the sample needs no more words: a dictionary leads by a clear margin, or the maximum sample size is reached.
+		 * @return true if the sample is decided
+		 */
+		public boolean isDecided()
+		{
+			return significant || size >= maxSample;
+		}
+
+		/**
+		 * Checks if the leading dictionary leads by a clear margin.
+		 * @return true if the choice is statistically significant
+		 */
+		public boolean isSignificant()
+		{
+			return significant;
+		}
+
+		/**
+		 * Returns the index of the dictionary with the most votes, the first one in case of a tie.
+		 * @return the index of the dictionary, or -1 if no word has been counted yet
+		 */
+		public int getBest()
+		{
+			int best = -1;
+			int bestVotes = 0;
+			for(int i = 0; i < votes.length; i++)
+			{
+				if(votes[i] > bestVotes)
+				{
+					best = i;
+					bestVotes = votes[i];
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Returns the number of votes for a dictionary
+		 * @param index the index of the dictionary
+		 * @return the number of votes
+		 */
+		public int getVotes(int index)
+		{
+			return votes[index];
+		}
+
+		/**
+		 * Returns the number of words sampled
+		 * @return the number of words
+		 */
+		public int getSize()
+		{
+			return size;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package jspell;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, in nanoseconds, with logarithmic buckets: each power of two is split in four buckets, so a percentile is read with an error
+ * below 25% whatever the scale. Recording a value is lock-free and allocates nothing. The histogram is thread-safe.
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * 4 buckets per power of two, up to 2^63 nanoseconds
+	 */
+	private static final int BUCKETS = 64 * 4;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a duration.
+	 * @param nanos the duration, in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		if(nanos < 0) nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * the values below 4 have their own bucket, the others are indexed by their highest bit and the two bits following it
+	 */
+	private static int bucket(long nanos)
+	{
+		if(nanos < 4) return (int)nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		return exponent * 4 + (int)((nanos >>> (exponent - 2)) & 3);
+	}
+
+	/**
+	 * the largest value of a bucket
+	 */
+	private static long upperBound(int bucket)
+	{
+		if(bucket < 4) return bucket;
+		int exponent = bucket / 4;
+		long upper = (4L + (bucket & 3) + 1) << (exponent - 2);
+		return upper <= 0 ? Long.MAX_VALUE : upper - 1;
+	}
+
+	/**
+	 * Returns the number of durations recorded
+	 * @return the count
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * Returns the sum of the durations recorded
+	 * @return the total, in nanoseconds
+	 */
+	public long getTotal()
+	{
+		return total.sum();
+	}
+
+	/**
+	 * Returns the mean of the durations recorded
+	 * @return the mean, in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public double getMean()
+	{
+		long n = count.sum();
+		return n == 0 ? 0 : (double)total.sum() / n;
+	}
+
+	/**
+	 * Returns the longest duration recorded
+	 * @return the maximum, in nanoseconds
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Returns a percentile of the durations recorded, rounded up to the upper bound of its bucket.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the duration, in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for(int i = 0; i < BUCKETS; i++) n += snapshot[i] = counts.get(i);
+		if(n == 0) return 0;
+
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if(seen >= rank) return Math.min(upperBound(i), getMax());
+		}
+		return getMax();
+	}
+}
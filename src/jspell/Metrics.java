@@ -0,0 +1,139 @@
+package jspell;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Switch and publication of the metrics of the dictionaries: the latency of {@link Dictionary#containsWord(CharSequence)} and {@link Dictionary#getNearestSiblings(String)},
+ * and for each searching module its latency histogram, the candidates it examines, its index size and how often the sibling chosen by the user
+ * is one it proposed (see {@link DictionaryMetrics} and {@link ModuleMetrics}).
+ * <br><br>
+ * The metrics are disabled by default, or enabled at launch with -Djspell.metrics=true. While they are disabled, the instrumented methods only read a volatile flag.
+ * <br><br>
+ * The metrics of a dictionary are always recorded, but only published once it is registered: as MXBeans in the platform MBean server, named
+ * "jspell:type=Dictionary,name=..." and "jspell:type=Module,dictionary=...,index=...,name=...", and in the text returned by {@link #snapshot()}.
+ */
+public final class Metrics
+{
+	private static volatile boolean enabled = Boolean.getBoolean("jspell.metrics");
+
+	private static final List<Dictionary> REGISTERED = new CopyOnWriteArrayList<>();
+
+	private Metrics()
+	{
+	}
+
+	/**
+	 * Returns true if the metrics are being recorded
+	 * @return true if the metrics are enabled
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording the metrics. The metrics already recorded are kept.
+	 * @param enabled true to record the metrics
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * Publishes the metrics of a dictionary and of its modules in JMX, and adds them to the snapshot.
+	 * @param d the dictionary
+	 * @throws IllegalArgumentException if a dictionary with the same name is already registered
+	 */
+	public static synchronized void register(Dictionary d)
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		DictionaryMetrics metrics = d.getMetrics();
+		try
+		{
+			server.registerMBean(metrics, dictionaryName(d));
+			List<ModuleMetrics> modules = metrics.getModules();
+			for(int i = 0; i < modules.size(); i++) server.registerMBean(modules.get(i), moduleName(d, i, modules.get(i)));
+		}
+		catch(InstanceAlreadyExistsException e)
+		{
+			throw new IllegalArgumentException("A dictionary named "+d.getName()+" is already registered");
+		}
+		catch(JMException e)
+		{
+			throw new IllegalStateException("Can't publish the metrics of the dictionary "+d.getName(), e);
+		}
+		REGISTERED.add(d);
+	}
+
+	/**
+	 * Removes the metrics of a dictionary from JMX and from the snapshot.
+	 * @param d the dictionary
+	 */
+	public static synchronized void unregister(Dictionary d)
+	{
+		if(!REGISTERED.remove(d)) return;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<ModuleMetrics> modules = d.getMetrics().getModules();
+		try
+		{
+			server.unregisterMBean(dictionaryName(d));
+			for(int i = 0; i < modules.size(); i++) server.unregisterMBean(moduleName(d, i, modules.get(i)));
+		}
+		catch(InstanceNotFoundException e)
+		{
+			// unregistered by someone else
+		}
+		catch(JMException e)
+		{
+			throw new IllegalStateException("Can't remove the metrics of the dictionary "+d.getName(), e);
+		}
+	}
+
+	private static ObjectName dictionaryName(Dictionary d) throws JMException
+	{
+		return new ObjectName("jspell:type=Dictionary,name="+ObjectName.quote(d.getName()));
+	}
+
+	private static ObjectName moduleName(Dictionary d, int index, ModuleMetrics module) throws JMException
+	{
+		return new ObjectName("jspell:type=Module,dictionary="+ObjectName.quote(d.getName())+",index="+index+",name="+module.getName());
+	}
+
+	/**
+	 * Returns the metrics of the registered dictionaries as text, one line per dictionary followed by one line per module. The durations are in microseconds.
+	 * @return the metrics
+	 */
+	public static String snapshot()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append(enabled ? "metrics enabled" : "metrics disabled").append('\n');
+		for(Dictionary d : REGISTERED)
+		{
+			DictionaryMetrics m = d.getMetrics();
+			s.append(String.format(Locale.ROOT, "dictionary %s: words=%d lookups=%d lookup_mean=%.2f lookup_p99=%.2f suggestions=%d suggestion_mean=%.1f suggestion_p50=%.1f suggestion_p99=%.1f"
+					+ " cache_hits=%d cache_misses=%d cache_hit_rate=%.3f choices=%d\n",
+					m.getName(), m.getWords(), m.getLookups(), m.getMeanLookupLatency(), m.getP99LookupLatency(), m.getSuggestions(), m.getMeanSuggestionLatency(),
+					m.getP50SuggestionLatency(), m.getP99SuggestionLatency(), m.getCacheHits(), m.getCacheMisses(), m.getCacheHitRate(), m.getChoices()));
+			for(ModuleMetrics module : m.getModules())
+			{
+				s.append(String.format(Locale.ROOT, "  module %s: searches=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f candidates=%.1f empty=%d timeouts=%d"
+						+ " picks=%d/%d pick_rate=%.3f index_size=%d\n",
+						module.getName(), module.getSearches(), module.getMeanLatency(), module.getP50Latency(), module.getP90Latency(), module.getP99Latency(),
+						module.getMaxLatency(), module.getCandidatesPerSearch(), module.getEmptyResults(), module.getTimeouts(), module.getPicks(), module.getChoices(),
+						module.getPickRate(), module.getIndexSize()));
+			}
+		}
+		return s.toString();
+	}
+}
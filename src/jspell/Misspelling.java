@@ -0,0 +1,89 @@
+package jspell;
+
+/**
+ * An unknown word found in a text by {@link Corrector#check(java.io.Reader)}, with its position in the text and the propositions for it.
+ */
+public class Misspelling
+{
+	private final long offset;
+	private final String word;
+	private final String[] suggestions;
+	private final Dictionary dictionary;
+
+	/**
+	 * Constructor for Misspelling, whose dictionary isn't known.
+	 * @param offset the offset of the word in the text, in characters
+	 * @param word the unknown word
+	 * @param suggestions the propositions for the word
+	 */
+	public Misspelling(long offset, String word, String[] suggestions)
+	{
+		this(offset, word, suggestions, null);
+	}
+
+	/**
+	 * Complete constructor for Misspelling.
+	 * @param offset the offset of the word in the text, in characters
+	 * @param word the unknown word
+	 * @param suggestions the propositions for the word
+	 * @param dictionary the dictionary the word has been checked with
+	 */
+	public Misspelling(long offset, String word, String[] suggestions, Dictionary dictionary)
+	{
+		this.offset = offset;
+		this.word = word;
+		this.suggestions = suggestions.clone();
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Getter for the offset of the word in the text
+	 * @return the offset, in characters from the beginning of the text
+	 */
+	public long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Getter for the length of the word
+	 * @return the length, in characters
+	 */
+	public int getLength()
+	{
+		return word.length();
+	}
+
+	/**
+	 * Getter for the unknown word
+	 * @return the word, as written in the text
+	 */
+	public String getWord()
+	{
+		return word;
+	}
+
+	/**
+	 * Getter for the propositions for the word
+	 * @return a copy of the propositions, the best one first
+	 */
+	public String[] getSuggestions()
+	{
+		return suggestions.clone();
+	}
+
+	/**
+	 * Getter for the dictionary the word has been checked with, which may differ from one paragraph to the other with the detection of the segments
+	 * @return the dictionary, or null if it isn't known
+	 */
+	public Dictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	@Override
+	public String toString()
+	{
+		return word+"@"+offset+" -> "+String.join(",", suggestions);
+	}
+}
@@ -0,0 +1,46 @@
+package jspell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AnnotationSink} keeping the unknown words of a text with their offset, computed from the length of the text received before them.
+ */
+class MisspellingCollector implements AnnotationSink
+{
+	private final List<Misspelling> misspellings;
+	private long offset;
+
+	MisspellingCollector()
+	{
+		this.misspellings = new ArrayList<>();
+	}
+
+	@Override
+	public void text(CharSequence text)
+	{
+		offset += text.length();
+	}
+
+	@Override
+	public void misspelling(String word, String[] siblings)
+	{
+		misspelling(word, siblings, null);
+	}
+
+	@Override
+	public void misspelling(String word, String[] siblings, Dictionary dictionary)
+	{
+		misspellings.add(new Misspelling(offset, word, siblings, dictionary));
+		offset += word.length();
+	}
+
+	/**
+	 * Returns the unknown words found, in the order of the text
+	 * @return the misspellings
+	 */
+	List<Misspelling> getMisspellings()
+	{
+		return misspellings;
+	}
+}
@@ -0,0 +1,182 @@
+package jspell;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jspell.modules.Module;
+
+/**
+ * Latency and effectiveness of a searching module, recorded by {@link jspell.modules.InstrumentedModule} while {@link Metrics} are enabled.
+ * <br><br>
+ * The candidates are counted by the modules themselves, through {@link #countCandidates(int)}: each module counts the words it compares with the searched word
+ * (or the nodes of the trie it visits), on the thread running the search.
+ */
+public final class ModuleMetrics implements ModuleMetricsMXBean
+{
+	/**
+	 * Running total of the candidates counted by the searches of each thread
+	 */
+	private static final ThreadLocal<long[]> CANDIDATES = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final String name;
+	private final Module module;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder candidates = new LongAdder();
+	private final LongAdder emptyResults = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder choices = new LongAdder();
+	private final LongAdder picks = new LongAdder();
+
+	/**
+	 * Constructor for ModuleMetrics.
+	 * @param module the measured module
+	 */
+	public ModuleMetrics(Module module)
+	{
+		this.name = module.getClass().getSimpleName();
+		this.module = module;
+	}
+
+	/**
+	 * Counts candidates examined by the search running on the current thread. Does nothing while the metrics are disabled.
+	 * @param count the number of candidates
+	 */
+	public static void countCandidates(int count)
+	{
+		if(Metrics.isEnabled()) CANDIDATES.get()[0] += count;
+	}
+
+	/**
+	 * Returns the number of candidates counted on the current thread since it started, to be compared before and after a search.
+	 * @return the running total of the candidates
+	 */
+	public static long countedCandidates()
+	{
+		return CANDIDATES.get()[0];
+	}
+
+	/**
+	 * Records a search of the module.
+	 * @param nanos the duration of the search
+	 * @param candidates the number of candidates examined
+	 * @param siblings the number of siblings found
+	 */
+	public void recordSearch(long nanos, long candidates, int siblings)
+	{
+		latency.record(nanos);
+		this.candidates.add(candidates);
+		if(siblings == 0) emptyResults.increment();
+	}
+
+	/**
+	 * Records a search abandoned because the module didn't answer in time.
+	 */
+	public void recordTimeout()
+	{
+		timeouts.increment();
+	}
+
+	/**
+	 * Records a sibling chosen by the user.
+	 * @param proposed true if the module proposed it
+	 */
+	public void recordChoice(boolean proposed)
+	{
+		choices.increment();
+		if(proposed) picks.increment();
+	}
+
+	/**
+	 * Getter for the latency histogram of the searches
+	 * @return the histogram, in nanoseconds
+	 */
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public long getSearches()
+	{
+		return latency.getCount();
+	}
+
+	@Override
+	public double getMeanLatency()
+	{
+		return latency.getMean() / 1000;
+	}
+
+	@Override
+	public double getP50Latency()
+	{
+		return latency.getPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP90Latency()
+	{
+		return latency.getPercentile(90) / 1000.0;
+	}
+
+	@Override
+	public double getP99Latency()
+	{
+		return latency.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getMaxLatency()
+	{
+		return latency.getMax() / 1000.0;
+	}
+
+	@Override
+	public double getCandidatesPerSearch()
+	{
+		long searches = latency.getCount();
+		return searches == 0 ? 0 : (double)candidates.sum() / searches;
+	}
+
+	@Override
+	public long getEmptyResults()
+	{
+		return emptyResults.sum();
+	}
+
+	@Override
+	public long getTimeouts()
+	{
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getChoices()
+	{
+		return choices.sum();
+	}
+
+	@Override
+	public long getPicks()
+	{
+		return picks.sum();
+	}
+
+	@Override
+	public double getPickRate()
+	{
+		long n = choices.sum();
+		return n == 0 ? 0 : (double)picks.sum() / n;
+	}
+
+	@Override
+	public int getIndexSize()
+	{
+		return module.getIndexSize();
+	}
+}
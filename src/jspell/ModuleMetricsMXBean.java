@@ -0,0 +1,92 @@
+package jspell;
+
+/**
+ * Management interface of the metrics of a searching module, published in JMX by {@link Metrics#register(Dictionary)}.
+ * The durations are in microseconds.
+ */
+public interface ModuleMetricsMXBean
+{
+	/**
+	 * Returns the name of the module
+	 * @return the class name of the module
+	 */
+	public String getName();
+
+	/**
+	 * Returns the number of searches run by the module
+	 * @return the searches count
+	 */
+	public long getSearches();
+
+	/**
+	 * Returns the mean duration of the searches
+	 * @return the mean latency
+	 */
+	public double getMeanLatency();
+
+	/**
+	 * Returns the median duration of the searches
+	 * @return the 50th percentile of the latency
+	 */
+	public double getP50Latency();
+
+	/**
+	 * Returns the 90th percentile of the duration of the searches
+	 * @return the 90th percentile of the latency
+	 */
+	public double getP90Latency();
+
+	/**
+	 * Returns the 99th percentile of the duration of the searches
+	 * @return the 99th percentile of the latency
+	 */
+	public double getP99Latency();
+
+	/**
+	 * Returns the longest search
+	 * @return the maximum latency
+	 */
+	public double getMaxLatency();
+
+	/**
+	 * Returns the mean number of words the module compared with the searched word
+	 * @return the candidates examined per search
+	 */
+	public double getCandidatesPerSearch();
+
+	/**
+	 * Returns the number of searches which found no sibling
+	 * @return the empty results count
+	 */
+	public long getEmptyResults();
+
+	/**
+	 * Returns the number of searches abandoned by the {@link jspell.modules.ModuleAggregator} because the module didn't answer in time
+	 * @return the timeouts count
+	 */
+	public long getTimeouts();
+
+	/**
+	 * Returns the number of siblings chosen by the user during a correction
+	 * @return the choices count
+	 */
+	public long getChoices();
+
+	/**
+	 * Returns the number of chosen siblings the module proposed
+	 * @return the picks count
+	 */
+	public long getPicks();
+
+	/**
+	 * Returns the part of the chosen siblings the module proposed
+	 * @return the pick rate, between 0 and 1
+	 */
+	public double getPickRate();
+
+	/**
+	 * Returns the size of the index of the module
+	 * @return the index size, or -1 if the module has no index
+	 */
+	public int getIndexSize();
+}
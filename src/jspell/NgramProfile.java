@@ -0,0 +1,170 @@
+package jspell;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Character trigram profile of the words of a dictionary, telling how much an unknown word looks like the language of the dictionary. The words are padded
+ * with a start and an end mark, so that the first and last letters have their own trigrams ("^^a", "^ab", ..., "yz$").
+ * <br><br>
+ * The profile keeps the number of occurrences of each trigram in sorted arrays. It is built once per dictionary (see {@link Dictionary#getNgramProfile()}),
+ * replaced by an updated copy when a word is added to the dictionary, and saved in the binary snapshot of the dictionary.
+ */
+public final class NgramProfile
+{
+	private static final char START = '\u0002';
+	private static final char END = '\u0003';
+
+	private final long[] trigrams;
+	private final int[] counts;
+	private final long total;
+
+	private NgramProfile(long[] trigrams, int[] counts)
+	{
+		this.trigrams = trigrams;
+		this.counts = counts;
+		long total = 0;
+		for(int count : counts) total += count;
+		this.total = total;
+	}
+
+	/**
+	 * Builds the profile of the words of a dictionary
+	 * @param words the words
+	 * @return the profile
+	 */
+	public static NgramProfile build(WordStore words)
+	{
+		Map<Long, int[]> occurrences = new HashMap<>();
+		for(int id = 0; id < words.size(); id++)
+		{
+			CharSequence word = words.getWord(id);
+			int length = word.length();
+			for(int i = -2; i < length; i++)
+			{
+				long trigram = trigram(charAt(word, i), charAt(word, i+1), charAt(word, i+2));
+				int[] count = occurrences.get(trigram);
+				if(count == null) occurrences.put(trigram, count = new int[1]);
+				count[0]++;
+			}
+		}
+
+		long[] trigrams = new long[occurrences.size()];
+		int i = 0;
+		for(Long trigram : occurrences.keySet()) trigrams[i++] = trigram;
+		Arrays.sort(trigrams);
+		int[] counts = new int[trigrams.length];
+		for(i = 0; i < trigrams.length; i++) counts[i] = occurrences.get(trigrams[i])[0];
+		return new NgramProfile(trigrams, counts);
+	}
+
+	/**
+	 * Returns the profile with the trigrams of one more word. The profile itself isn't modified.
+	 * @param word the new word
+	 * @return the updated profile
+	 */
+	NgramProfile with(CharSequence word)
+	{
+		long[] trigrams = this.trigrams;
+		int[] counts = this.counts.clone();
+		int length = word.length();
+		for(int i = -2; i < length; i++)
+		{
+			long trigram = trigram(charAt(word, i), charAt(word, i+1), charAt(word, i+2));
+			int index = Arrays.binarySearch(trigrams, trigram);
+			if(index >= 0)
+			{
+				counts[index]++;
+				continue;
+			}
+
+			// a new trigram, inserted in order
+			index = -index-1;
+			long[] t = new long[trigrams.length+1];
+			int[] c = new int[t.length];
+			System.arraycopy(trigrams, 0, t, 0, index);
+			System.arraycopy(counts, 0, c, 0, index);
+			System.arraycopy(trigrams, index, t, index+1, trigrams.length-index);
+			System.arraycopy(counts, index, c, index+1, counts.length-index);
+			t[index] = trigram;
+			c[index] = 1;
+			trigrams = t;
+			counts = c;
+		}
+		return new NgramProfile(trigrams, counts);
+	}
+
+	private static char charAt(CharSequence word, int i)
+	{
+		if(i < 0) return START;
+		if(i >= word.length()) return END;
+		return Character.toLowerCase(word.charAt(i));
+	}
+
+	private static long trigram(char a, char b, char c)
+	{
+		return ((long)a << 32) | ((long)b << 16) | c;
+	}
+
+	/**
+	 * Returns the mean log-probability of the trigrams of a word in this profile, with add-one smoothing. Scores of different profiles can be compared:
+	 * the highest score is the most likely language.
+	 * @param word the word
+	 * @return the score, always negative
+	 */
+	public double score(CharSequence word)
+	{
+		int length = word.length();
+		double denominator = Math.log(total + trigrams.length + 1);
+		double score = 0;
+		for(int i = -2; i < length; i++)
+		{
+			int index = Arrays.binarySearch(trigrams, trigram(charAt(word, i), charAt(word, i+1), charAt(word, i+2)));
+			int count = index < 0 ? 0 : counts[index];
+			score += Math.log(count + 1) - denominator;
+		}
+		return score / (length + 2);
+	}
+
+	/**
+	 * Returns the number of distinct trigrams of the profile
+	 * @return the number of trigrams
+	 */
+	public int size()
+	{
+		return trigrams.length;
+	}
+
+	/**
+	 * Writes the profile, in the format read by {@link #readFrom(ByteBuffer)}.
+	 * @param out the output stream
+	 * @throws IOException if the profile can't be written
+	 */
+	void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeInt(trigrams.length);
+		for(long trigram : trigrams) out.writeLong(trigram);
+		for(int count : counts) out.writeInt(count);
+	}
+
+	/**
+	 * Reads a profile written by {@link #writeTo(DataOutputStream)}.
+	 * @param in the buffer
+	 * @return the profile
+	 */
+	static NgramProfile readFrom(ByteBuffer in)
+	{
+		int size = in.getInt();
+		long[] trigrams = new long[size];
+		in.asLongBuffer().get(trigrams);
+		in.position(in.position() + 8*size);
+		int[] counts = new int[size];
+		in.asIntBuffer().get(counts);
+		in.position(in.position() + 4*size);
+		return new NgramProfile(trigrams, counts);
+	}
+}
@@ -0,0 +1,83 @@
+package jspell;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AnnotationSink} keeping the annotation of a part of a text in memory, to send it later to another sink. Used to annotate the chunks of a text
+ * in parallel while writing them in order.
+ */
+class RecordingSink implements AnnotationSink
+{
+	/**
+	 * the recorded annotation: text as Strings, misspellings as Misspellings whose offset isn't used
+	 */
+	private final List<Object> events;
+	private final StringBuilder text;
+	private int misspellings;
+
+	RecordingSink()
+	{
+		this.events = new ArrayList<>();
+		this.text = new StringBuilder();
+	}
+
+	@Override
+	public void text(CharSequence text)
+	{
+		this.text.append(text);
+	}
+
+	@Override
+	public void misspelling(String word, String[] siblings)
+	{
+		misspelling(word, siblings, null);
+	}
+
+	@Override
+	public void misspelling(String word, String[] siblings, Dictionary dictionary)
+	{
+		flushText();
+		misspellings++;
+		events.add(new Misspelling(0, word, siblings, dictionary));
+	}
+
+	private void flushText()
+	{
+		if(text.length() == 0) return;
+		events.add(text.toString());
+		text.setLength(0);
+	}
+
+	/**
+	 * Returns the number of misspellings recorded
+	 * @return the number of misspellings
+	 */
+	int getMisspellings()
+	{
+		return misspellings;
+	}
+
+	/**
+	 * Sends the recorded annotation to another sink.
+	 * @param sink the sink
+	 * @throws IOException if the sink can't write the annotation
+	 */
+	void replay(AnnotationSink sink) throws IOException
+	{
+		flushText();
+		for(Object event : events)
+		{
+			if(event instanceof String)
+			{
+				sink.text((String)event);
+			}
+			else
+			{
+				Misspelling misspelling = (Misspelling)event;
+				sink.misspelling(misspelling.getWord(), misspelling.getSuggestions(), misspelling.getDictionary());
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package jspell;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * {@link AnnotationSink} writing the annotated text with the &lt;spell&gt; markup: each unknown word is written as
+ * &lt;spell&gt;word|sibling1,sibling2&lt;/spell&gt;.
+ */
+public class SpellMarkupSink implements AnnotationSink
+{
+	private final Writer out;
+
+	/**
+	 * Constructor for SpellMarkupSink.
+	 * @param out the writer receiving the annotated text, which should be buffered
+	 */
+	public SpellMarkupSink(Writer out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void text(CharSequence text) throws IOException
+	{
+		out.append(text);
+	}
+
+	@Override
+	public void misspelling(String word, String[] siblings) throws IOException
+	{
+		out.write("<spell>");
+		out.write(word);
+		out.write('|');
+		for(int i = 0; i < siblings.length; i++)
+		{
+			if(i > 0) out.write(',');
+			out.write(siblings[i]);
+		}
+		out.write("</spell>");
+	}
+}
@@ -0,0 +1,594 @@
+package jspell;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spell-checking service keeping its dictionaries loaded between requests. The server only listens on the loopback address, and serves each connection
+ * on its own thread: a virtual thread when the JVM provides them (Java 21 and later), a pooled platform thread otherwise.
+ * <br><br>
+ * The protocol is line-oriented, in UTF-8. Each request is a line, and gets a response line:
+ * <br> - SUGGEST word : the propositions for the word, as a JSON array of strings
+ * <br> - CHECK text : the unknown words of the text, as a JSON array of objects {"offset":..,"length":..,"word":..,"suggestions":[..]}
+ * <br> - DICT name : checks the next requests of the connection with the given dictionary, or with the dictionary detected for each request with "DICT auto" (the default). Responds OK.
+ * <br> - BATCH n : the n following lines are SUGGEST or CHECK requests, answered in order with n response lines sent at once
+ * <br> - METRICS : the text snapshot of the registered dictionaries (see {@link Metrics#snapshot()}), as a JSON string
+ * <br> - QUIT : closes the connection.
+ * <br> A request which can't be served gets the response "ERR message". A request line is at most {@link #MAX_LINE} characters long, and the requests of a batch
+ * {@link #MAX_BATCH_LENGTH} characters altogether: the longer ones are skipped without being kept in memory, and get an ERR response.
+ * <br><br>
+ * The number of connections and the number of requests processed at the same time are limited. A connection refused because of the limit gets a single ERR line.
+ * {@link #shutdown(long, TimeUnit)} stops accepting connections, lets the requests being processed finish, then closes the connections.
+ * <br><br>
+ * Usage : java [-Djspell.metrics=true] jspell.SpellServer [port]
+ */
+public class SpellServer implements Closeable
+{
+	/**
+	 * Default port of the server.
+	 */
+	public static final int DEFAULT_PORT = 7707;
+
+	/**
+	 * Default maximum number of open connections.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+
+	/**
+	 * Default maximum number of requests processed at the same time.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Maximum number of requests in a batch.
+	 */
+	public static final int MAX_BATCH = 10000;
+
+	/**
+	 * Maximum length of a request line, in characters.
+	 */
+	public static final int MAX_LINE = 16384;
+
+	/**
+	 * Maximum length of all the requests of a batch, in characters.
+	 */
+	public static final int MAX_BATCH_LENGTH = 262144;
+
+	/**
+	 * Time given to the requests being processed by {@link #close()}, in milliseconds.
+	 */
+	public static final long SHUTDOWN_TIMEOUT = 5000;
+
+	private final Dictionary[] dictionaries;
+	private final Corrector corrector;
+	private final LanguageDetector languageDetector;
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor;
+	private final Semaphore requests;
+	private final int maxConnections;
+	private final Set<Connection> connections;
+	private final Thread acceptor;
+	private volatile boolean running;
+
+	/**
+	 * Constructor for SpellServer, with the default limits. The server is bound to the loopback address, and must then be started.
+	 * @param port the port, 0 to pick a free one (see {@link #getPort()})
+	 * @param dictionaries the dictionaries served
+	 * @throws IOException if the port can't be bound
+	 */
+	public SpellServer(int port, Dictionary... dictionaries) throws IOException
+	{
+		this(port, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONCURRENT_REQUESTS, dictionaries);
+	}
+
+	/**
+	 * Complete constructor for SpellServer. The server is bound to the loopback address, and must then be started.
+	 * @param port the port, 0 to pick a free one (see {@link #getPort()})
+	 * @param maxConnections the maximum number of open connections
+	 * @param maxConcurrentRequests the maximum number of requests processed at the same time, a batch counting as one request
+	 * @param dictionaries the dictionaries served
+	 * @throws IOException if the port can't be bound
+	 */
+	public SpellServer(int port, int maxConnections, int maxConcurrentRequests, Dictionary... dictionaries) throws IOException
+	{
+		if(maxConnections < 1 || maxConcurrentRequests < 1) throw new IllegalArgumentException("The limits must be positive");
+		this.dictionaries = dictionaries;
+		this.corrector = new Corrector(dictionaries);
+		this.languageDetector = corrector.getLanguageDetector();
+		this.languageDetector.setUseProfiles(true);
+		// Builds the profiles now rather than on the first request
+		for(Dictionary d : dictionaries) d.getNgramProfile();
+
+		this.maxConnections = maxConnections;
+		this.requests = new Semaphore(maxConcurrentRequests);
+		this.connections = ConcurrentHashMap.newKeySet();
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.executor = newConnectionExecutor();
+		this.acceptor = new Thread(this::acceptConnections, "jspell-server");
+	}
+
+	/**
+	 * Returns an executor running each task on a new virtual thread if the JVM supports them, on a pooled daemon thread otherwise.
+	 */
+	private static ExecutorService newConnectionExecutor()
+	{
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "jspell-connection");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Starts accepting connections, on a new thread.
+	 */
+	public void start()
+	{
+		running = true;
+		acceptor.start();
+	}
+
+	/**
+	 * Getter for the port the server listens to
+	 * @return the port
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	private void acceptConnections()
+	{
+		while(running)
+		{
+			Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch(IOException e)
+			{
+				if(running) System.err.println("Could not accept a connection: "+e.getMessage());
+				continue;
+			}
+
+			if(!running || connections.size() >= maxConnections)
+			{
+				refuse(socket, running ? "too many connections" : "shutting down");
+				continue;
+			}
+			Connection connection = new Connection(socket);
+			connections.add(connection);
+			try
+			{
+				executor.execute(connection);
+			}
+			catch(RejectedExecutionException e)
+			{
+				connections.remove(connection);
+				refuse(socket, "shutting down");
+			}
+		}
+	}
+
+	private static void refuse(Socket socket, String reason)
+	{
+		try(Socket s = socket; Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))
+		{
+			out.write("ERR "+reason+"\n");
+		}
+		catch(IOException e)
+		{
+			// the client is already gone
+		}
+	}
+
+	/**
+	 * Stops the server: no connection is accepted anymore, the idle connections are closed, and the other ones are closed once their current request is answered.
+	 * @param timeout the maximum time to wait for the requests being processed
+	 * @param unit the unit of the timeout
+	 * @return true if all the connections have been closed gracefully, false if some of them had to be interrupted
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		running = false;
+		try
+		{
+			serverSocket.close();
+		}
+		catch(IOException e)
+		{
+			// already closed
+		}
+		if(acceptor.isAlive()) acceptor.join();
+
+		for(Connection connection : connections) connection.shutdown();
+		executor.shutdown();
+		if(executor.awaitTermination(timeout, unit)) return true;
+
+		for(Connection connection : connections) connection.close();
+		executor.shutdownNow();
+		return false;
+	}
+
+	/**
+	 * Stops the server, giving {@link #SHUTDOWN_TIMEOUT} ms to the requests being processed (see {@link #shutdown(long, TimeUnit)}).
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			shutdown(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the dictionary of the given name
+	 * @return the dictionary, or null if there is no such dictionary
+	 */
+	private Dictionary findDictionary(String name)
+	{
+		for(Dictionary d : dictionaries)
+		{
+			if(d.getName().equalsIgnoreCase(name)) return d;
+		}
+		return null;
+	}
+
+	/**
+	 * A client connection, reading requests and writing responses until the client leaves or the server stops.
+	 */
+	private class Connection implements Runnable
+	{
+		private final Socket socket;
+		/**
+		 * the dictionary chosen by the client, null to detect it for each request
+		 */
+		private Dictionary dictionary;
+		private boolean busy;
+		private boolean closing;
+
+		Connection(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		@Override
+		public void run()
+		{
+			try(LineReader in = new LineReader(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)));
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))
+			{
+				String line;
+				while((line = in.readLine(MAX_LINE)) != null && beginRequest())
+				{
+					boolean open;
+					try
+					{
+						if(in.isTooLong())
+						{
+							out.write("ERR the request is longer than "+MAX_LINE+" characters\n");
+							open = true;
+						}
+						else
+						{
+							open = handle(line, in, out);
+						}
+						out.flush();
+					}
+					finally
+					{
+						endRequest();
+					}
+					if(!open) break;
+				}
+			}
+			catch(SocketException e)
+			{
+				// closed by the client, or by the shutdown
+			}
+			catch(IOException e)
+			{
+				System.err.println("Connection error: "+e.getMessage());
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				close();
+				connections.remove(this);
+			}
+		}
+
+		private synchronized boolean beginRequest()
+		{
+			if(closing) return false;
+			busy = true;
+			return true;
+		}
+
+		private synchronized void endRequest()
+		{
+			busy = false;
+			if(closing) close();
+		}
+
+		/**
+		 * Closes the connection now if it is idle, or after its current request otherwise
+		 */
+		synchronized void shutdown()
+		{
+			closing = true;
+			if(!busy) close();
+		}
+
+		void close()
+		{
+			try
+			{
+				socket.close();
+			}
+			catch(IOException e)
+			{
+				// already closed
+			}
+		}
+
+		/**
+		 * Handles a request line
+		 * @return false if the connection must be closed
+		 */
+		private boolean handle(String line, LineReader in, Writer out) throws IOException, InterruptedException
+		{
+			String command = command(line);
+			String argument = argument(line);
+			switch(command)
+			{
+				case "QUIT":
+					return false;
+
+				case "METRICS":
+					Json.writeString(out, Metrics.snapshot());
+					out.write('\n');
+					return true;
+
+				case "DICT":
+					if(argument.equalsIgnoreCase("auto"))
+					{
+						dictionary = null;
+						out.write("OK\n");
+					}
+					else if(findDictionary(argument) != null)
+					{
+						dictionary = findDictionary(argument);
+						out.write("OK\n");
+					}
+					else
+					{
+						out.write("ERR unknown dictionary "+argument+"\n");
+					}
+					return true;
+
+				case "BATCH":
+					int size;
+					try
+					{
+						size = Integer.parseInt(argument.trim());
+					}
+					catch(NumberFormatException e)
+					{
+						size = -1;
+					}
+					if(size < 0 || size > MAX_BATCH)
+					{
+						out.write("ERR the batch size must be between 0 and "+MAX_BATCH+"\n");
+						return true;
+					}
+					// the requests beyond the limits are kept as null, and answered with an error
+					String[] batch = new String[size];
+					int remaining = MAX_BATCH_LENGTH;
+					for(int i = 0; i < size; i++)
+					{
+						String request = in.readLine(Math.min(MAX_LINE, remaining));
+						if(request == null) return false;
+						if(in.isTooLong()) continue;
+						batch[i] = request;
+						remaining -= request.length();
+					}
+					requests.acquire();
+					try
+					{
+						for(String request : batch)
+						{
+							if(request == null) out.write("ERR the request is longer than "+MAX_LINE+" characters, or the batch longer than "+MAX_BATCH_LENGTH+"\n");
+							else answer(command(request), argument(request), out);
+						}
+					}
+					finally
+					{
+						requests.release();
+					}
+					return true;
+
+				default:
+					requests.acquire();
+					try
+					{
+						answer(command, argument, out);
+					}
+					finally
+					{
+						requests.release();
+					}
+					return true;
+			}
+		}
+
+		private String command(String line)
+		{
+			int space = line.indexOf(' ');
+			return (space == -1 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+		}
+
+		private String argument(String line)
+		{
+			int space = line.indexOf(' ');
+			return space == -1 ? "" : line.substring(space+1);
+		}
+
+		/**
+		 * Answers a SUGGEST or CHECK request. The answer is found before anything is written, and a request failing with an exception gets an ERR response:
+		 * each request of a batch gets exactly one response line.
+		 */
+		private void answer(String command, String argument, Writer out) throws IOException
+		{
+			try
+			{
+				switch(command)
+				{
+					case "SUGGEST":
+						String word = argument.trim();
+						if(word.isEmpty())
+						{
+							out.write("ERR missing word");
+							break;
+						}
+						String[] siblings = dictionaryFor(word).getNearestSiblings(word);
+						Json.writeStrings(out, siblings);
+						break;
+
+					case "CHECK":
+						List<Misspelling> misspellings = corrector.check(new StringReader(argument), dictionaryFor(argument));
+						Json.writeMisspellings(out, misspellings);
+						break;
+
+					default:
+						out.write("ERR unknown request "+command);
+				}
+			}
+			catch(RuntimeException e)
+			{
+				System.err.println("Request failed: "+e);
+				String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+				out.write("ERR "+message.replace('\n', ' ').replace('\r', ' '));
+			}
+			out.write('\n');
+		}
+
+		private Dictionary dictionaryFor(String text) throws IOException
+		{
+			if(dictionary != null) return dictionary;
+			return dictionaries[Math.max(languageDetector.detect(new StringReader(text)).getBest(), 0)];
+		}
+	}
+
+	/**
+	 * Reader of the request lines, whose length is bounded: the characters of a longer line are read up to its end without being kept.
+	 */
+	private static final class LineReader implements Closeable
+	{
+		private final Reader in;
+		private boolean tooLong;
+
+		LineReader(Reader in)
+		{
+			this.in = in;
+		}
+
+		/**
+		 * Reads a line, ended by "\n" or "\r\n"
+		 * @param max the maximum length of the line, in characters
+		 * @return the line without its line break, an empty line if it is longer than the maximum (see {@link #isTooLong()}), or null at the end of the stream
+		 * @throws IOException if the line can't be read
+		 */
+		String readLine(int max) throws IOException
+		{
+			StringBuilder line = new StringBuilder();
+			tooLong = false;
+			int c;
+			while((c = in.read()) != -1 && c != '\n')
+			{
+				// one more character, which may be the \r of the line break
+				if(line.length() <= max) line.append((char)c);
+				else tooLong = true;
+			}
+			if(line.length() > 0 && line.charAt(line.length()-1) == '\r') line.setLength(line.length()-1);
+			if(line.length() > max) tooLong = true;
+			if(tooLong) return "";
+			if(c == -1 && line.length() == 0) return null;
+			return line.toString();
+		}
+
+		/**
+		 * Returns true if the last line read was too long
+		 * @return true if the last line has been skipped
+		 */
+		boolean isTooLong()
+		{
+			return tooLong;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Main method of the server. The server stops gracefully when the JVM is stopped.
+	 * @param args the port, optional
+	 * @throws IOException if a dictionary file isn't found, or if the port can't be bound
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+		Dictionary fr = new Dictionary("Francais", new File("dic/francais.txt"), Locale.FRENCH);
+		Dictionary en = new Dictionary("English", new File("dic/english.txt"));
+
+		Metrics.register(fr);
+		Metrics.register(en);
+		SpellServer server = new SpellServer(port, fr, en);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+		server.start();
+		System.out.println("Listening on "+InetAddress.getLoopbackAddress().getHostAddress()+":"+server.getPort());
+	}
+}
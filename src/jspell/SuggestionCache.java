@@ -0,0 +1,164 @@
+package jspell;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the siblings found for unknown words, evicting the least recently used word when it is full. The cache is thread-safe.
+ * <br><br>
+ * The cache must be invalidated whenever the words of the dictionary change. A search started before an invalidation can't store its (outdated) result afterwards:
+ * the caller reads the generation of the cache before searching, and gives it back when storing the result.
+ */
+public class SuggestionCache
+{
+	/**
+	 * Default number of words kept by the cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final LinkedHashMap<String, String[]> entries;
+	private int capacity;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructor for SuggestionCache.
+	 * @param capacity the maximum number of words kept by the cache, 0 to disable it
+	 */
+	public SuggestionCache(int capacity)
+	{
+		if(capacity < 0) throw new IllegalArgumentException("The capacity can't be negative");
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, String[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest)
+			{
+				if(size() <= SuggestionCache.this.capacity) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached siblings of the given word.
+	 * @param word the unknown word
+	 * @return a copy of the cached siblings, or null if the word isn't cached
+	 */
+	public synchronized String[] get(String word)
+	{
+		String[] siblings = entries.get(word);
+		if(siblings == null)
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		return siblings.clone();
+	}
+
+	/**
+	 * Stores the siblings of the given word, unless the cache has been invalidated since the given generation.
+	 * @param word the unknown word
+	 * @param siblings the siblings found
+	 * @param generation the generation of the cache when the search started, see {@link #getGeneration()}
+	 */
+	public synchronized void put(String word, String[] siblings, long generation)
+	{
+		if(generation != this.generation || capacity == 0) return;
+		entries.put(word, siblings.clone());
+	}
+
+	/**
+	 * Returns the current generation of the cache, incremented by each invalidation.
+	 * @return the generation
+	 */
+	public synchronized long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Empties the cache. Must be called when the words of the dictionary change.
+	 */
+	public synchronized void invalidate()
+	{
+		entries.clear();
+		generation++;
+	}
+
+	/**
+	 * Changes the maximum number of words kept by the cache. The least recently used words are evicted if needed.
+	 * @param capacity the new capacity, 0 to disable the cache
+	 */
+	public synchronized void setCapacity(int capacity)
+	{
+		if(capacity < 0) throw new IllegalArgumentException("The capacity can't be negative");
+		this.capacity = capacity;
+		while(entries.size() > capacity)
+		{
+			entries.remove(entries.keySet().iterator().next());
+			evictions++;
+		}
+	}
+
+	/**
+	 * Getter for the capacity of the cache
+	 * @return the maximum number of words kept
+	 */
+	public synchronized int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of words currently cached
+	 * @return the cache size
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of searches answered by the cache
+	 * @return the hits count
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of searches the cache couldn't answer
+	 * @return the misses count
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of words evicted to make room for new ones
+	 * @return the evictions count
+	 */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Returns the part of the searches answered by the cache
+	 * @return the hit rate, between 0 and 1
+	 */
+	public synchronized double getHitRate()
+	{
+		long total = hits + misses;
+		return total == 0 ? 0 : (double)hits/(double)total;
+	}
+}
@@ -0,0 +1,112 @@
+package jspell;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a text into words and separators in a single pass, reading it through a buffer. Separators are the runs of ASCII punctuation and space characters
+ * (the same characters as the [\p{Punct}\p{Space}] regular expression used to load the dictionaries), and words are the runs of all the other characters.
+ * <br><br>
+ * The tokenizer only keeps the current token in memory, so texts of any size can be read.
+ */
+public class TextTokenizer
+{
+	/**
+	 * The kinds of tokens
+	 */
+	public enum TokenType
+	{
+		WORD,
+		SEPARATOR
+	}
+
+	private static final boolean[] DELIMITERS = new boolean[128];
+	static
+	{
+		for(char c : "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~ \t\n\u000B\f\r".toCharArray()) DELIMITERS[c] = true;
+	}
+
+	private final Reader reader;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	private final StringBuilder token;
+	private long offset;
+	private long nextOffset;
+
+	/**
+	 * Constructor for TextTokenizer.
+	 * @param reader the text to split
+	 */
+	public TextTokenizer(Reader reader)
+	{
+		this.reader = reader;
+		this.buffer = new char[8192];
+		this.token = new StringBuilder();
+	}
+
+	/**
+	 * Checks if the given character separates words
+	 * @param c the character
+	 * @return true for ASCII punctuation and space characters
+	 */
+	public static boolean isDelimiter(char c)
+	{
+		return c < 128 && DELIMITERS[c];
+	}
+
+	/**
+	 * Reads the next token.
+	 * @return the type of the token, or null at the end of the text
+	 * @throws IOException if the text can't be read
+	 */
+	public TokenType next() throws IOException
+	{
+		token.setLength(0);
+		offset = nextOffset;
+		if(position == limit && !fill()) return null;
+
+		boolean separator = isDelimiter(buffer[position]);
+		do
+		{
+			int start = position;
+			while(position < limit && isDelimiter(buffer[position]) == separator) position++;
+			token.append(buffer, start, position-start);
+		}
+		while(position == limit && fill());
+
+		nextOffset = offset + token.length();
+		return separator ? TokenType.SEPARATOR : TokenType.WORD;
+	}
+
+	private boolean fill() throws IOException
+	{
+		int read;
+		do
+		{
+			read = reader.read(buffer);
+		}
+		while(read == 0);
+		position = 0;
+		limit = Math.max(read, 0);
+		return read > 0;
+	}
+
+	/**
+	 * Returns the current token. The returned sequence is reused by the next call to {@link #next()}.
+	 * @return the token
+	 */
+	public CharSequence getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * Returns the offset of the current token in the text, in characters
+	 * @return the offset
+	 */
+	public long getOffset()
+	{
+		return offset;
+	}
+}
@@ -0,0 +1,459 @@
+package jspell;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact store of the words of a dictionary and of their number of occurrences. Instead of one String and one Integer per word, the store keeps:
+ * <br> - all the characters of the words one after the other in a single array
+ * <br> - the offset of each word in this array, and its number of occurrences, in int arrays indexed by the word id
+ * <br> - an open addressing hash table of word ids.
+ * <br><br>
+ * Words are stored in lower case. The lookups fold the case of the searched characters on the fly, so they don't allocate anything.
+ * Word ids are given in insertion order, from 0, and never change.
+ * <br><br>
+ * A store can be read by any number of threads while a single thread adds words, without locking. When a word is added, its characters, offset and
+ * occurrences are written first, then its id is put in the hash table (in a new table filled completely when the table grows), and the id is published last
+ * through the volatile size of the store. A reader reads the size first and only follows the ids lower than it, so it sees either the whole word or nothing.
+ * The arrays replaced when they grow are volatile as well: a reader seeing a new array also sees its content, even if it read the size before the array was replaced.
+ * Several threads adding words must be serialized by the caller.
+ */
+public class WordStore
+{
+	/**
+	 * the arrays, volatile because they are replaced by copies when they grow
+	 */
+	private volatile char[] chars;
+	private volatile int[] offsets;
+	private volatile int[] frequencies;
+	private volatile int[] table;
+	/**
+	 * the number of published words, written last when a word is added
+	 */
+	private volatile int size;
+
+	/**
+	 * Constructor for an empty WordStore.
+	 */
+	public WordStore()
+	{
+		chars = new char[4096];
+		offsets = new int[513];
+		frequencies = new int[512];
+		table = new int[1024];
+	}
+
+	private WordStore(char[] chars, int[] offsets, int[] frequencies, int[] table, int size)
+	{
+		this.chars = chars;
+		this.offsets = offsets;
+		this.frequencies = frequencies;
+		this.table = table;
+		this.size = size;
+	}
+
+	/**
+	 * Writes the arrays of the store, in the format read by {@link #readFrom(ByteBuffer)}.
+	 * @param out the output stream
+	 * @throws IOException if the store can't be written
+	 */
+	void writeTo(DataOutputStream out) throws IOException
+	{
+		int size = this.size;
+		int charCount = offsets[size];
+		out.writeInt(size);
+		out.writeInt(charCount);
+		for(int i = 0; i < charCount; i++) out.writeChar(chars[i]);
+		for(int i = 0; i <= size; i++) out.writeInt(offsets[i]);
+		for(int i = 0; i < size; i++) out.writeInt(frequencies[i]);
+		out.writeInt(table.length);
+		for(int slot : table) out.writeInt(slot);
+	}
+
+	/**
+	 * Reads a store written by {@link #writeTo(DataOutputStream)}. The arrays are copied in bulk from the buffer, whose position is moved after the store.
+	 * @param in the buffer
+	 * @return the store
+	 */
+	static WordStore readFrom(ByteBuffer in)
+	{
+		int size = in.getInt();
+		int charCount = in.getInt();
+
+		char[] chars = new char[Math.max(charCount, 16)];
+		in.asCharBuffer().get(chars, 0, charCount);
+		in.position(in.position() + 2*charCount);
+
+		int capacity = Math.max(size+1, 16);
+		int[] offsets = new int[capacity+1];
+		in.asIntBuffer().get(offsets, 0, size+1);
+		in.position(in.position() + 4*(size+1));
+
+		int[] frequencies = new int[capacity];
+		in.asIntBuffer().get(frequencies, 0, size);
+		in.position(in.position() + 4*size);
+
+		int[] table = new int[in.getInt()];
+		in.asIntBuffer().get(table);
+		in.position(in.position() + 4*table.length);
+
+		return new WordStore(chars, offsets, frequencies, table, size);
+	}
+
+	private static char fold(char c)
+	{
+		return Character.toLowerCase(c);
+	}
+
+	private static int hash(CharSequence word)
+	{
+		int h = 0;
+		for(int i = 0; i < word.length(); i++) h = 31*h + fold(word.charAt(i));
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private boolean matches(int id, CharSequence word)
+	{
+		int[] offsets = this.offsets;
+		char[] chars = this.chars;
+		int offset = offsets[id];
+		if(offsets[id+1] - offset != word.length()) return false;
+		for(int i = 0; i < word.length(); i++)
+		{
+			if(chars[offset+i] != fold(word.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the id of the given word, ignoring its case.
+	 * @param word the word to search
+	 * @return the word id, or -1 if the word isn't in the store
+	 */
+	public int indexOf(CharSequence word)
+	{
+		int published = size;
+		int[] table = this.table;
+		int mask = table.length-1;
+		for(int slot = hash(word) & mask; table[slot] != 0; slot = (slot+1) & mask)
+		{
+			int id = table[slot]-1;
+			// a word being added isn't visible until it is published
+			if(id < published && matches(id, word)) return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the store contains the given word, ignoring its case.
+	 * @param word the word to check
+	 * @return true if the word is in the store
+	 */
+	public boolean contains(CharSequence word)
+	{
+		return indexOf(word) != -1;
+	}
+
+	/**
+	 * Adds occurrences of a word to the store. The word is stored in lower case.
+	 * @param word the word to add
+	 * @param occurrences the number of occurrences to add
+	 * @return the id of the word
+	 */
+	public int add(CharSequence word, int occurrences)
+	{
+		int[] table = this.table;
+		int mask = table.length-1;
+		int slot = hash(word) & mask;
+		for(; table[slot] != 0; slot = (slot+1) & mask)
+		{
+			int id = table[slot]-1;
+			if(matches(id, word))
+			{
+				frequencies[id] += occurrences;
+				return id;
+			}
+		}
+
+		int id = size;
+		int offset = offsets[id];
+		char[] chars = this.chars;
+		if(offset + word.length() > chars.length) chars = Arrays.copyOf(chars, Math.max(chars.length*2, offset + word.length()));
+		for(int i = 0; i < word.length(); i++) chars[offset+i] = fold(word.charAt(i));
+		this.chars = chars;
+		if(id+1 == frequencies.length)
+		{
+			int[] frequencies = Arrays.copyOf(this.frequencies, this.frequencies.length*2);
+			this.offsets = Arrays.copyOf(offsets, frequencies.length+1);
+			this.frequencies = frequencies;
+		}
+		offsets[id+1] = offset + word.length();
+		frequencies[id] = occurrences;
+
+		/* the table is kept at most half full: a larger table is filled, the new word included, before the word is published */
+		if((id+1)*2 > table.length) this.table = rehash(table.length*2, id+1);
+		else table[slot] = id+1;
+		size = id+1;
+		return id;
+	}
+
+	/**
+	 * Adds all the words of another store, with their occurrences. The new words get their ids in the order of the other store.
+	 * @param other the other store
+	 */
+	public void addAll(WordStore other)
+	{
+		int size = other.size;
+		for(int id = 0; id < size; id++)
+		{
+			add(CharBuffer.wrap(other.chars, other.offsets[id], other.offsets[id+1]-other.offsets[id]), other.frequencies[id]);
+		}
+	}
+
+	/**
+	 * Builds a hash table of the given capacity holding the ids lower than count
+	 */
+	private int[] rehash(int capacity, int count)
+	{
+		int[] newTable = new int[capacity];
+		int mask = capacity-1;
+		for(int id = 0; id < count; id++)
+		{
+			int slot = hash(CharBuffer.wrap(chars, offsets[id], offsets[id+1]-offsets[id])) & mask;
+			while(newTable[slot] != 0) slot = (slot+1) & mask;
+			newTable[slot] = id+1;
+		}
+		return newTable;
+	}
+
+	/**
+	 * Returns the word with the given id.
+	 * @param id the word id
+	 * @return the word
+	 */
+	public String getWord(int id)
+	{
+		if(id < 0 || id >= size) throw new IndexOutOfBoundsException("No word with the id "+id);
+		return new String(chars, offsets[id], offsets[id+1]-offsets[id]);
+	}
+
+	/**
+	 * Returns the characters of the word with the given id, without copying them: a module comparing a word with many words of the store doesn't build
+	 * a String for each of them.
+	 * @param id the word id
+	 * @return a read-only view of the word
+	 */
+	public CharSequence getChars(int id)
+	{
+		if(id < 0 || id >= size) throw new IndexOutOfBoundsException("No word with the id "+id);
+		return new WordView(chars, offsets[id], offsets[id+1]-offsets[id]);
+	}
+
+	/**
+	 * Returns the length of the word with the given id, without building the word.
+	 * @param id the word id
+	 * @return the number of characters of the word
+	 */
+	public int getLength(int id)
+	{
+		if(id < 0 || id >= size) throw new IndexOutOfBoundsException("No word with the id "+id);
+		return offsets[id+1]-offsets[id];
+	}
+
+	/**
+	 * Returns the number of occurrences of the word with the given id.
+	 * @param id the word id
+	 * @return the number of occurrences
+	 */
+	public int getFrequency(int id)
+	{
+		if(id < 0 || id >= size) throw new IndexOutOfBoundsException("No word with the id "+id);
+		return frequencies[id];
+	}
+
+	/**
+	 * Returns the number of occurrences of the given word, ignoring its case.
+	 * @param word the word
+	 * @return the number of occurrences, or 0 if the word isn't in the store
+	 */
+	public int getFrequency(CharSequence word)
+	{
+		int id = indexOf(word);
+		return id == -1 ? 0 : frequencies[id];
+	}
+
+	/**
+	 * Returns the number of words in the store
+	 * @return the number of words
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Read-only view of the characters of a word, which never change once the word is added
+	 */
+	private static final class WordView implements CharSequence
+	{
+		private final char[] chars;
+		private final int offset;
+		private final int length;
+
+		WordView(char[] chars, int offset, int length)
+		{
+			this.chars = chars;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length()
+		{
+			return length;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			if(index < 0 || index >= length) throw new IndexOutOfBoundsException("No character at "+index);
+			return chars[offset+index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			if(start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("No sequence from "+start+" to "+end);
+			return new WordView(chars, offset+start, end-start);
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(chars, offset, length);
+		}
+	}
+
+	/**
+	 * Returns a read-only view of the store, mapping each word to its number of occurrences. Iterating over the view builds one String per word.
+	 * @return the map view
+	 */
+	public Map<String, Integer> asMap()
+	{
+		return new MapView();
+	}
+
+	private final class MapView extends AbstractMap<String, Integer>
+	{
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return key instanceof CharSequence && indexOf((CharSequence)key) != -1;
+		}
+
+		@Override
+		public Integer get(Object key)
+		{
+			if(!(key instanceof CharSequence)) return null;
+			int id = indexOf((CharSequence)key);
+			return id == -1 ? null : frequencies[id];
+		}
+
+		@Override
+		public Set<String> keySet()
+		{
+			return new AbstractSet<String>()
+			{
+				@Override
+				public Iterator<String> iterator()
+				{
+					return new IdIterator<String>()
+					{
+						@Override
+						String get(int id)
+						{
+							return getWord(id);
+						}
+					};
+				}
+
+				@Override
+				public boolean contains(Object o)
+				{
+					return containsKey(o);
+				}
+
+				@Override
+				public int size()
+				{
+					return size;
+				}
+			};
+		}
+
+		@Override
+		public Set<Map.Entry<String, Integer>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<String, Integer>>()
+			{
+				@Override
+				public Iterator<Map.Entry<String, Integer>> iterator()
+				{
+					return new IdIterator<Map.Entry<String, Integer>>()
+					{
+						@Override
+						Map.Entry<String, Integer> get(int id)
+						{
+							return new AbstractMap.SimpleImmutableEntry<>(getWord(id), frequencies[id]);
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					return size;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterator over the word ids, in insertion order.
+	 */
+	private abstract class IdIterator<T> implements Iterator<T>
+	{
+		private int next;
+
+		abstract T get(int id);
+
+		@Override
+		public boolean hasNext()
+		{
+			return next < size;
+		}
+
+		@Override
+		public T next()
+		{
+			if(next >= size) throw new NoSuchElementException();
+			return get(next++);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package jspell.modules;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jspell.WordStore;
+
+/**
+ * Burkhard-Keller tree indexing words by their Damerau-Levenshtein distance. Each node keeps its children in an array indexed by their distance
+ * from the node, so that a search only has to visit the children whose distance is compatible with the search radius (triangle inequality).
+ * <br><br>
+ * The restricted Damerau-Levenshtein distance (optimal string alignment) used by the module doesn't always respect the triangle inequality
+ * when several transpositions overlap, so a sibling can very rarely be missed. This is acceptable for suggestions.
+ * <br><br>
+ * The nodes keep the ids of their words in the word store of the dictionary, whose characters are compared without building the words.
+ * <br><br>
+ * Searches can run while a single thread inserts words: the children arrays are never modified once published, an insertion publishes a new array
+ * through a volatile field instead. A word is inserted before it is published in the word store: the searches skip the nodes of the ids not published yet,
+ * and their children, which have been inserted after them.
+ */
+final class BKTree
+{
+	private static final class Node
+	{
+		final int id;
+		volatile Node[] children;
+
+		Node(int id)
+		{
+			this.id = id;
+		}
+
+		static Node child(Node[] children, int distance)
+		{
+			return (children == null || distance >= children.length) ? null : children[distance];
+		}
+	}
+
+	private final WordStore store;
+	private volatile Node root;
+	private int size;
+
+	/**
+	 * Builds an empty tree
+	 * @param store the word store containing the words of the tree
+	 */
+	BKTree(WordStore store)
+	{
+		this.store = store;
+	}
+
+	/**
+	 * Inserts a word in the tree. Inserting an already known word does nothing.
+	 * @param word the word to insert
+	 * @param id the id of the word in the word store, which may not be published yet
+	 */
+	void add(CharSequence word, int id)
+	{
+		if(root == null)
+		{
+			root = new Node(id);
+			size++;
+			return;
+		}
+
+		Node node = root;
+		while(true)
+		{
+			int distance = EditDistance.damerauLevenshtein(store.getChars(node.id), word);
+			if(distance == 0) return;
+
+			Node[] children = node.children;
+			Node child = Node.child(children, distance);
+			if(child == null)
+			{
+				/* copy on write, a search may be reading the current array */
+				children = children == null ? new Node[distance+1] : Arrays.copyOf(children, Math.max(children.length, distance+1));
+				children[distance] = new Node(id);
+				node.children = children;
+				size++;
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Writes the tree, each word being saved as its id in the word store.
+	 * @param out the output stream
+	 * @throws IOException if the tree can't be written
+	 */
+	void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(size);
+		if(root != null) write(root, out);
+	}
+
+	private static void write(Node node, DataOutputStream out) throws IOException
+	{
+		out.writeInt(node.id);
+
+		Node[] children = node.children;
+		int length = children == null ? 0 : children.length;
+		int count = 0;
+		for(int d = 0; d < length; d++) if(children[d] != null) count++;
+		out.writeShort(length);
+		out.writeShort(count);
+		for(int d = 0; d < length; d++)
+		{
+			if(children[d] == null) continue;
+			out.writeShort(d);
+			write(children[d], out);
+		}
+	}
+
+	/**
+	 * Reads a tree written by {@link #write(DataOutputStream)}.
+	 * @param in the buffer
+	 * @param store the word store the tree has been written with
+	 * @return the tree
+	 */
+	static BKTree read(ByteBuffer in, WordStore store)
+	{
+		BKTree tree = new BKTree(store);
+		tree.size = in.getInt();
+		if(tree.size > 0) tree.root = readNode(in);
+		return tree;
+	}
+
+	private static Node readNode(ByteBuffer in)
+	{
+		Node node = new Node(in.getInt());
+		int length = in.getShort() & 0xFFFF;
+		int count = in.getShort() & 0xFFFF;
+		if(length == 0) return node;
+		Node[] children = new Node[length];
+		for(int i = 0; i < count; i++)
+		{
+			int d = in.getShort() & 0xFFFF;
+			children[d] = readNode(in);
+		}
+		node.children = children;
+		return node;
+	}
+
+	/**
+	 * Returns the number of words in the tree
+	 * @return the number of words
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Searches the nearest words of the given word. The search radius shrinks as soon as the collector is full, to the distance of its worst sibling.
+	 * @param word the searched word
+	 * @param collector the collector receiving the siblings
+	 * @return the number of words compared with the searched word
+	 */
+	int search(String word, SiblingsCollector collector)
+	{
+		Node root = this.root;
+		int published = store.size();
+		return root == null || root.id >= published ? 0 : search(root, word, collector, published);
+	}
+
+	private int search(Node node, String word, SiblingsCollector collector, int published)
+	{
+		// an abandoned search stops with the siblings found so far
+		if(Thread.currentThread().isInterrupted()) return 0;
+
+		Node[] children = node.children;
+		int cutoff = cutoff(children, collector.worstDistance());
+		int distance = EditDistance.damerauLevenshtein(store.getChars(node.id), word, cutoff);
+		collector.offer(node.id, distance);
+		int compared = 1;
+		if(children == null || distance > cutoff) return compared;
+
+		/* closest children first, so that the radius shrinks as fast as possible */
+		for(int offset = 0; offset <= collector.worstDistance(); offset++)
+		{
+			int below = distance - offset;
+			int above = distance + offset;
+			if(below < 1 && above >= children.length) break;
+
+			Node child = below >= 1 ? Node.child(children, below) : null;
+			if(child != null && child.id < published) compared += search(child, word, collector, published);
+			if(offset > collector.worstDistance()) break;
+
+			child = offset > 0 ? Node.child(children, above) : null;
+			if(child != null && child.id < published) compared += search(child, word, collector, published);
+		}
+		return compared;
+	}
+
+	/**
+	 * Returns the distance above which neither the node nor any of its children can be within the radius: the exact distance isn't needed past it.
+	 */
+	private static int cutoff(Node[] children, int radius)
+	{
+		int maxEdge = children == null ? 0 : children.length-1;
+		return radius > Integer.MAX_VALUE - maxEdge ? Integer.MAX_VALUE : radius + maxEdge;
+	}
+
+	/**
+	 * Returns all the words whose distance from the given word is lower or equal to the radius.
+	 * @param word the searched word
+	 * @param radius the search radius
+	 * @return the words found, in no particular order
+	 */
+	List<String> searchRadius(String word, int radius)
+	{
+		List<String> found = new ArrayList<>();
+		Node root = this.root;
+		int published = store.size();
+		if(root == null || root.id >= published) return found;
+
+		List<Node> toVisit = new ArrayList<>();
+		toVisit.add(root);
+		while(!toVisit.isEmpty())
+		{
+			Node node = toVisit.remove(toVisit.size()-1);
+			Node[] children = node.children;
+			int distance = EditDistance.damerauLevenshtein(store.getChars(node.id), word, cutoff(children, radius));
+			if(distance <= radius) found.add(store.getWord(node.id));
+			if(children == null) continue;
+
+			int max = Math.min(distance+radius, children.length-1);
+			for(int d = Math.max(1, distance-radius); d <= max; d++)
+			{
+				if(children[d] != null && children[d].id < published) toVisit.add(children[d]);
+			}
+		}
+		return found;
+	}
+}
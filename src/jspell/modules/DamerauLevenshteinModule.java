@@ -1,90 +1,188 @@
 package jspell.modules;
 
-import java.util.Arrays;
-import java.util.Set;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
 
 /**
- * This class implements the {@link Module} interface by searching siblings with the Damerau-Levenshtein algorithm.
+ * This class implements the {@link Module} interface by searching siblings with the Damerau-Levenshtein algorithm. The words of the dictionary
+ * are indexed once in a {@link BKTree}, so that a search only computes the distance of a small part of the dictionary. The distances are computed by {@link EditDistance}.
+ * <br><br>
+ * The module can also be built in scan mode, where every word of the dictionary is compared with the unknown word. The scan is then split into partitions
+ * run on the common fork-join pool, each one keeping its own best siblings, merged at the end: the module doesn't own any thread. Dictionaries smaller than
+ * {@link #SEQUENTIAL_THRESHOLD} are scanned sequentially.
+ * In scan mode, the words are read from the word store of the dictionary: a scan compares the words published when it starts, the words added during a scan don't disturb it.
  */
 public class DamerauLevenshteinModule implements Module
 {
+	/**
+	 * Number of words under which a scan isn't split any more.
+	 */
+	public static final int SEQUENTIAL_THRESHOLD = 8192;
+
+	private static final String INDEX_SECTION = "damerau-levenshtein";
+
 	private final Dictionary dictionary;
-	
+	private final BKTree tree;
+	private final int parallelism;
+
 	public DamerauLevenshteinModule(Dictionary d)
 	{
 		dictionary = d;
+		ByteBuffer index = dictionary.getSnapshotSection(INDEX_SECTION);
+		if(index != null)
+		{
+			tree = BKTree.read(index, dictionary.getWordStore());
+		}
+		else
+		{
+			WordStore store = dictionary.getWordStore();
+			tree = new BKTree(store);
+			for(int id = 0; id < store.size(); id++) tree.add(store.getChars(id), id);
+		}
+		parallelism = 1;
 	}
-	
+
+	/**
+	 * Builds the module in scan mode, for example with the factory of a dictionary:
+	 * new Dictionary(name, file, locale, d -&gt; new ModuleAggregator(new DamerauLevenshteinModule(d, 4), new HammingModule(d))).
+	 * @param d the dictionary
+	 * @param parallelism the number of partitions of the scan, run on the threads of the common fork-join pool, 1 for a sequential scan
+	 */
+	public DamerauLevenshteinModule(Dictionary d, int parallelism)
+	{
+		if(parallelism < 1) throw new IllegalArgumentException("The parallelism must be at least 1");
+
+		dictionary = d;
+		tree = null;
+		this.parallelism = parallelism;
+	}
+
 	@Override
-	public String[] getNearestSiblings(String word) 
+	public String[] getNearestSiblings(String word)
 	{
-		String[] siblings = new String[3];
-		int[] values = new int[3];
-		Arrays.fill(values, -1);
-		
-		Set<String> words = dictionary.getWords().keySet();
-		
-		for(String w : words)
+		SiblingsCollector siblings;
+		if(tree != null)
 		{
-			int res = calculateDL(w, word);
-			for(int i=0; i<values.length; i++)
-			{
-				if(values[i]==-1 || values[i] > res)
-				{
-					for(int j=values.length-1; j>i; j--)
-					{
-						values[j] = values[j-1];
-						siblings[j] = siblings[j-1];
-					}
-					values[i] = res;
-					siblings[i] = w;
-					break;
-				}
-			}
+			siblings = new SiblingsCollector(dictionary, 3);
+			ModuleMetrics.countCandidates(tree.search(word, siblings));
+			return siblings.toArray();
+		}
+
+		// the scan compares every word, the partitions may run on other threads
+		int size = dictionary.getWordStore().size();
+		ModuleMetrics.countCandidates(size);
+		if(parallelism == 1 || size < SEQUENTIAL_THRESHOLD)
+		{
+			siblings = new ScanTask(word, Thread.currentThread(), 0, size, size).compute();
+		}
+		else
+		{
+			int partition = Math.max(SEQUENTIAL_THRESHOLD, (size + parallelism - 1) / parallelism);
+			siblings = ForkJoinPool.commonPool().invoke(new ScanTask(word, Thread.currentThread(), 0, size, partition));
+		}
+		return siblings.toArray();
+	}
+
+	/**
+	 * Returns all the words of the dictionary whose distance from the given word is lower or equal to the radius.
+	 * @param word the unknown word
+	 * @param radius the maximum distance
+	 * @return the words found, in no particular order
+	 */
+	public List<String> getSiblingsWithin(String word, int radius)
+	{
+		if(tree != null) return tree.searchRadius(word, radius);
+
+		WordStore store = dictionary.getWordStore();
+		int size = store.size();
+		List<String> found = new ArrayList<>();
+		for(int id = 0; id < size; id++)
+		{
+			if(EditDistance.damerauLevenshtein(store.getChars(id), word, radius) <= radius) found.add(store.getWord(id));
 		}
-		
-		return siblings;
+		return found;
 	}
-	
-	private int calculateDL(String w1, String w2)
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		// the modules are updated before the word is added to the store, where it will take the next id. The scan reads the store.
+		if(tree != null) tree.add(newWord, dictionary.getWordStore().size());
+	}
+
+	@Override
+	public int getIndexSize()
 	{
-		int l1 = w1.length();
-		int l2 = w2.length();
-		int cost;
-		
-		int[][] values = new int[l1+1][l2+1];
-		
-		for(int i=0; i<=l1; i++) values[i][0] = i;
-		for(int i=0; i<=l2; i++) values[0][i] = i;
-		
-		for(int i=1; i<=l1; i++)
+		return tree != null ? tree.size() : dictionary.getWordStore().size();
+	}
+
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		if(tree == null) return;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
 		{
-			for(int j=1; j<=l2; j++)
+			tree.write(out);
+		}
+		sections.put(INDEX_SECTION, bytes.toByteArray());
+	}
+
+	/**
+	 * Scan of a partition of the words. The partition is split in two halves until it is smaller than the given partition size.
+	 * The scan stops when the thread which asked for the search is interrupted.
+	 */
+	private final class ScanTask extends RecursiveTask<SiblingsCollector>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String word;
+		private final Thread caller;
+		private final int from;
+		private final int to;
+		private final int partition;
+
+		ScanTask(String word, Thread caller, int from, int to, int partition)
+		{
+			this.word = word;
+			this.caller = caller;
+			this.from = from;
+			this.to = to;
+			this.partition = partition;
+		}
+
+		@Override
+		protected SiblingsCollector compute()
+		{
+			if(to - from > partition)
+			{
+				int middle = (from + to) >>> 1;
+				ScanTask left = new ScanTask(word, caller, from, middle, partition);
+				left.fork();
+				SiblingsCollector siblings = new ScanTask(word, caller, middle, to, partition).compute();
+				siblings.offerAll(left.join());
+				return siblings;
+			}
+
+			WordStore store = dictionary.getWordStore();
+			SiblingsCollector siblings = new SiblingsCollector(dictionary, 3);
+			for(int id = from; id < to && !caller.isInterrupted(); id++)
 			{
-				if(w1.charAt(i-1) == w2.charAt(j-1)) cost = 0;
-				else cost = 1;
-				
-				int del = values[i-1][j]+1;
-                int ins = values[i][j-1]+1;
-                int sub = values[i-1][j-1]+cost;
-                
-				int min = Math.min(del, Math.min(ins, sub));
-				
-				values[i][j] = min;
-				
-				
-				if((i > 1) && (j > 1) 
-				   && (w1.charAt(i-1) == w2.charAt(j-2)) 
-				   && (w1.charAt(i-2) == w2.charAt(j-1)))
-				{
-					values[i][j] = Math.min(values[i][j], values[i-2][j-2]+cost);
-				}
+				siblings.offer(id, EditDistance.damerauLevenshtein(store.getChars(id), word, siblings.worstDistance()));
 			}
+			return siblings;
 		}
-        
-	    
-		return values[l1][l2];
 	}
 }
@@ -0,0 +1,837 @@
+package jspell.modules;
+
+/**
+ * Double Metaphone encoder (Lawrence Philips, 2000). A word gets a primary key, its most likely pronunciation, and an alternate key when its pronunciation
+ * is ambiguous ("Schmidt": XMT and SMT). The keys are consonant skeletons, the vowels only counting as "A" at the start of the word.
+ * <br><br>
+ * The French variant follows the same principle with the rules of French spelling: "ch", "gn", "qu", "ph", soft "c" and "g", and the silent final consonants
+ * ("petit", "nez", "aimer"), which are dropped from the primary key and kept in the alternate one.
+ * <br><br>
+ * A key is packed in an int, 4 bits per symbol from the first symbol in the upper bits, so keys of at most 8 symbols are supported.
+ */
+final class DoubleMetaphone
+{
+	/**
+	 * the symbols of the keys, "0" being the "th" sound. Their code is their position plus one, 0 marking the end of a key.
+	 */
+	private static final String SYMBOLS = "A0FHJKLMNPRSTXY";
+
+	/**
+	 * Maximum length of a key.
+	 */
+	static final int MAX_KEY_LENGTH = 8;
+
+	private final boolean french;
+	private final int maxLength;
+
+	/**
+	 * Constructor for DoubleMetaphone.
+	 * @param french true for the French rules, false for the English ones
+	 * @param maxLength the number of symbols of the keys, at most {@link #MAX_KEY_LENGTH}
+	 */
+	DoubleMetaphone(boolean french, int maxLength)
+	{
+		if(maxLength < 1 || maxLength > MAX_KEY_LENGTH) throw new IllegalArgumentException("The key length must be between 1 and "+MAX_KEY_LENGTH);
+		this.french = french;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Computes the keys of a word
+	 * @param word the word
+	 * @return the packed primary key in the upper 32 bits, the packed alternate key in the lower 32 bits
+	 */
+	long encode(CharSequence word)
+	{
+		Encoding encoding = new Encoding(word);
+		if(french) encoding.french();
+		else encoding.english();
+		return ((long)pack(encoding.primary) << 32) | (pack(encoding.alternate) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the primary key of keys returned by {@link #encode(CharSequence)}
+	 * @param keys the keys
+	 * @return the packed primary key
+	 */
+	static int primary(long keys)
+	{
+		return (int)(keys >>> 32);
+	}
+
+	/**
+	 * Returns the alternate key of keys returned by {@link #encode(CharSequence)}
+	 * @param keys the keys
+	 * @return the packed alternate key
+	 */
+	static int alternate(long keys)
+	{
+		return (int)keys;
+	}
+
+	private static int pack(CharSequence key)
+	{
+		int packed = 0;
+		for(int i = 0; i < MAX_KEY_LENGTH; i++)
+		{
+			packed = (packed << 4) | (i < key.length() ? SYMBOLS.indexOf(key.charAt(i)) + 1 : 0);
+		}
+		return packed;
+	}
+
+	/**
+	 * Returns the text form of a packed key, such as "XMT"
+	 * @param key the packed key
+	 * @return the key
+	 */
+	static String toString(int key)
+	{
+		StringBuilder s = new StringBuilder(MAX_KEY_LENGTH);
+		for(int shift = 4*(MAX_KEY_LENGTH-1); shift >= 0; shift -= 4)
+		{
+			int code = (key >>> shift) & 0xF;
+			if(code == 0) break;
+			s.append(SYMBOLS.charAt(code-1));
+		}
+		return s.toString();
+	}
+
+	/**
+	 * The state of the encoding of one word
+	 */
+	private final class Encoding
+	{
+		private final char[] value;
+		private final int length;
+		private final StringBuilder primary;
+		private final StringBuilder alternate;
+		private boolean slavoGermanic;
+
+		Encoding(CharSequence word)
+		{
+			length = word.length();
+			value = new char[length];
+			for(int i = 0; i < length; i++) value[i] = Character.toUpperCase(word.charAt(i));
+			primary = new StringBuilder(maxLength);
+			alternate = new StringBuilder(maxLength);
+		}
+
+		private char charAt(int index)
+		{
+			return index < 0 || index >= length ? '\0' : value[index];
+		}
+
+		/**
+		 * Checks if the word contains one of the given strings at the given index
+		 */
+		private boolean contains(int start, String... strings)
+		{
+			if(start < 0) return false;
+			for(String s : strings)
+			{
+				if(start + s.length() > length) continue;
+				boolean match = true;
+				for(int i = 0; i < s.length() && match; i++) match = value[start+i] == s.charAt(i);
+				if(match) return true;
+			}
+			return false;
+		}
+
+		private boolean isVowel(char c)
+		{
+			return "AEIOUY".indexOf(c) != -1;
+		}
+
+		private boolean isComplete()
+		{
+			return primary.length() >= maxLength && alternate.length() >= maxLength;
+		}
+
+		private void append(String both)
+		{
+			append(both, both);
+		}
+
+		private void append(String p, String a)
+		{
+			appendPrimary(p);
+			appendAlternate(a);
+		}
+
+		private void appendPrimary(String p)
+		{
+			primary.append(p, 0, Math.min(p.length(), maxLength - primary.length()));
+		}
+
+		private void appendAlternate(String a)
+		{
+			alternate.append(a, 0, Math.min(a.length(), maxLength - alternate.length()));
+		}
+
+		/**
+		 * Returns the index after a letter, skipping it when it is doubled
+		 */
+		private int skipDouble(int index)
+		{
+			return charAt(index+1) == charAt(index) ? index+2 : index+1;
+		}
+
+		/* ---------------------------------------- English ---------------------------------------- */
+
+		void english()
+		{
+			for(char c : value)
+			{
+				if(c == 'W' || c == 'K') slavoGermanic = true;
+			}
+			slavoGermanic |= contains("CZ") || contains("WITZ");
+
+			int index = contains(0, "GN", "KN", "PN", "WR", "PS") ? 1 : 0;
+			while(!isComplete() && index < length)
+			{
+				switch(value[index])
+				{
+					case 'A': case 'E': case 'I': case 'O': case 'U': case 'Y':
+						if(index == 0) append("A");
+						index++;
+						break;
+					case 'B':
+						append("P");
+						index = skipDouble(index);
+						break;
+					case 'Ç':
+						append("S");
+						index++;
+						break;
+					case 'C':
+						index = englishC(index);
+						break;
+					case 'D':
+						index = englishD(index);
+						break;
+					case 'F':
+						append("F");
+						index = skipDouble(index);
+						break;
+					case 'G':
+						index = englishG(index);
+						break;
+					case 'H':
+						if((index == 0 || isVowel(charAt(index-1))) && isVowel(charAt(index+1)))
+						{
+							append("H");
+							index += 2;
+						}
+						else index++;
+						break;
+					case 'J':
+						index = englishJ(index);
+						break;
+					case 'K':
+						append("K");
+						index = skipDouble(index);
+						break;
+					case 'L':
+						index = englishL(index);
+						break;
+					case 'M':
+						append("M");
+						index = charAt(index+1) == 'M' || (contains(index-1, "UMB") && (index+1 == length-1 || contains(index+2, "ER"))) ? index+2 : index+1;
+						break;
+					case 'N':
+						append("N");
+						index = skipDouble(index);
+						break;
+					case 'Ñ':
+						append("N");
+						index++;
+						break;
+					case 'P':
+						if(charAt(index+1) == 'H')
+						{
+							append("F");
+							index += 2;
+						}
+						else
+						{
+							append("P");
+							index = contains(index+1, "P", "B") ? index+2 : index+1;
+						}
+						break;
+					case 'Q':
+						append("K");
+						index = skipDouble(index);
+						break;
+					case 'R':
+						if(index == length-1 && !slavoGermanic && contains(index-2, "IE") && !contains(index-4, "ME", "MA")) appendAlternate("R");
+						else append("R");
+						index = skipDouble(index);
+						break;
+					case 'S':
+						index = englishS(index);
+						break;
+					case 'T':
+						index = englishT(index);
+						break;
+					case 'V':
+						append("F");
+						index = skipDouble(index);
+						break;
+					case 'W':
+						index = englishW(index);
+						break;
+					case 'X':
+						if(index == 0)
+						{
+							append("S");
+							index++;
+						}
+						else
+						{
+							// French endings: "breaux", "Arnoux"
+							if(!(index == length-1 && (contains(index-3, "IAU", "EAU") || contains(index-2, "AU", "OU")))) append("KS");
+							index = contains(index+1, "C", "X") ? index+2 : index+1;
+						}
+						break;
+					case 'Z':
+						index = englishZ(index);
+						break;
+					default:
+						index++;
+				}
+			}
+		}
+
+		private boolean contains(String s)
+		{
+			for(int i = 0; i + s.length() <= length; i++)
+			{
+				if(contains(i, s)) return true;
+			}
+			return false;
+		}
+
+		private int englishC(int index)
+		{
+			if(isGermanicCh(index))
+			{
+				append("K");
+				return index+2;
+			}
+			if(index == 0 && contains(index, "CAESAR"))
+			{
+				append("S");
+				return index+2;
+			}
+			if(contains(index, "CH")) return englishCh(index);
+			if(contains(index, "CZ") && !contains(index-2, "WICZ"))
+			{
+				append("S", "X");
+				return index+2;
+			}
+			if(contains(index+1, "CIA"))
+			{
+				append("X");
+				return index+3;
+			}
+			if(contains(index, "CC") && !(index == 1 && charAt(0) == 'M'))
+			{
+				// "bellocchio" but not "bacchus"
+				if(contains(index+2, "I", "E", "H") && !contains(index+2, "HU"))
+				{
+					if((index == 1 && charAt(index-1) == 'A') || contains(index-1, "UCCEE", "UCCES")) append("KS");
+					else append("X");
+					return index+3;
+				}
+				append("K");
+				return index+2;
+			}
+			if(contains(index, "CK", "CG", "CQ"))
+			{
+				append("K");
+				return index+2;
+			}
+			if(contains(index, "CI", "CE", "CY"))
+			{
+				if(contains(index, "CIO", "CIE", "CIA")) append("S", "X");
+				else append("S");
+				return index+2;
+			}
+
+			append("K");
+			if(contains(index+1, " C", " Q", " G")) return index+3;
+			if(contains(index+1, "C", "K", "Q") && !contains(index+1, "CE", "CI")) return index+2;
+			return index+1;
+		}
+
+		/**
+		 * "-chia-", "bacher", "macher": a germanic "ch"
+		 */
+		private boolean isGermanicCh(int index)
+		{
+			if(contains(index, "CHIA")) return true;
+			if(index <= 1 || isVowel(charAt(index-2)) || !contains(index-1, "ACH")) return false;
+			char c = charAt(index+2);
+			return (c != 'I' && c != 'E') || contains(index-2, "BACHER", "MACHER");
+		}
+
+		private int englishCh(int index)
+		{
+			if(index > 0 && contains(index, "CHAE"))
+			{
+				append("K", "X");
+				return index+2;
+			}
+			// greek roots: "chemistry", "chorus"
+			boolean greek = index == 0 && (contains(index+1, "HARAC", "HARIS") || contains(index+1, "HOR", "HYM", "HIA", "HEM")) && !contains(0, "CHORE");
+			boolean germanic = contains(0, "VAN ", "VON ", "SCH") || contains(index-2, "ORCHES", "ARCHIT", "ORCHID") || contains(index+2, "T", "S")
+				|| ((contains(index-1, "A", "O", "U", "E") || index == 0) && (contains(index+2, "L", "R", "N", "M", "B", "H", "F", "V", "W", " ") || index+1 == length-1));
+			if(greek || germanic) append("K");
+			else if(index == 0) append("X");
+			else if(contains(0, "MC")) append("K");
+			else append("X", "K");
+			return index+2;
+		}
+
+		private int englishD(int index)
+		{
+			if(contains(index, "DG"))
+			{
+				// "edge"
+				if(contains(index+2, "I", "E", "Y"))
+				{
+					append("J");
+					return index+3;
+				}
+				append("TK");
+				return index+2;
+			}
+			append("T");
+			return contains(index, "DT", "DD") ? index+2 : index+1;
+		}
+
+		private int englishG(int index)
+		{
+			char next = charAt(index+1);
+			if(next == 'H') return englishGh(index);
+			if(next == 'N')
+			{
+				if(index == 1 && isVowel(charAt(0)) && !slavoGermanic) append("KN", "N");
+				else if(!contains(index+2, "EY") && !slavoGermanic) append("N", "KN");
+				else append("KN");
+				return index+2;
+			}
+			if(contains(index+1, "LI") && !slavoGermanic)
+			{
+				append("KL", "L");
+				return index+2;
+			}
+			if(index == 0 && (next == 'Y' || contains(index+1, "ES", "EP", "EB", "EL", "EY", "IB", "IL", "IN", "IE", "EI", "ER")))
+			{
+				append("K", "J");
+				return index+2;
+			}
+			if((contains(index+1, "ER") || next == 'Y') && !contains(0, "DANGER", "RANGER", "MANGER") && !contains(index-1, "E", "I") && !contains(index-1, "RGY", "OGY"))
+			{
+				append("K", "J");
+				return index+2;
+			}
+			if(contains(index+1, "E", "I", "Y") || contains(index-1, "AGGI", "OGGI"))
+			{
+				if(contains(0, "VAN ", "VON ", "SCH") || contains(index+1, "ET")) append("K");
+				else if(contains(index+1, "IER")) append("J");
+				else append("J", "K");
+				return index+2;
+			}
+			append("K");
+			return next == 'G' ? index+2 : index+1;
+		}
+
+		private int englishGh(int index)
+		{
+			if(index > 0 && !isVowel(charAt(index-1)))
+			{
+				append("K");
+			}
+			else if(index == 0)
+			{
+				append(charAt(index+2) == 'I' ? "J" : "K");
+			}
+			else if(!contains(index-2, "B", "H", "D") && !contains(index-3, "B", "H", "D") && !contains(index-4, "B", "H"))
+			{
+				// "laugh", "cough" but not "hugh", "bough"
+				if(index > 2 && charAt(index-1) == 'U' && contains(index-3, "C", "G", "L", "R", "T")) append("F");
+				else if(charAt(index-1) != 'I') append("K");
+			}
+			return index+2;
+		}
+
+		private int englishJ(int index)
+		{
+			if(contains(index, "JOSE") || contains(0, "SAN "))
+			{
+				if((index == 0 && charAt(index+4) == ' ') || length == 4 || contains(0, "SAN ")) append("H");
+				else append("J", "H");
+				return index+1;
+			}
+			if(index == 0) append("J", "A");
+			else if(isVowel(charAt(index-1)) && !slavoGermanic && (charAt(index+1) == 'A' || charAt(index+1) == 'O')) append("J", "H");
+			else if(index == length-1) appendPrimary("J");
+			else if(!contains(index+1, "L", "T", "K", "S", "N", "M", "B", "Z") && !contains(index-1, "S", "K", "L")) append("J");
+			return skipDouble(index);
+		}
+
+		private int englishL(int index)
+		{
+			if(charAt(index+1) != 'L')
+			{
+				append("L");
+				return index+1;
+			}
+			// spanish "cabrillo", "gallegos"
+			if((index == length-3 && contains(index-1, "ILLO", "ILLA", "ALLE"))
+				|| ((contains(length-2, "AS", "OS") || contains(length-1, "A", "O")) && contains(index-1, "ALLE"))) appendPrimary("L");
+			else append("L");
+			return index+2;
+		}
+
+		private int englishS(int index)
+		{
+			if(contains(index-1, "ISL", "YSL"))
+			{
+				// "island", "carlisle"
+				return index+1;
+			}
+			if(index == 0 && contains(index, "SUGAR"))
+			{
+				append("X", "S");
+				return index+1;
+			}
+			if(contains(index, "SH"))
+			{
+				append(contains(index+1, "HEIM", "HOEK", "HOLM", "HOLZ") ? "S" : "X");
+				return index+2;
+			}
+			if(contains(index, "SIO", "SIA"))
+			{
+				if(slavoGermanic) append("S");
+				else append("S", "X");
+				return index+3;
+			}
+			if((index == 0 && contains(index+1, "M", "N", "L", "W")) || contains(index+1, "Z"))
+			{
+				append("S", "X");
+				return contains(index+1, "Z") ? index+2 : index+1;
+			}
+			if(contains(index, "SC"))
+			{
+				if(charAt(index+2) == 'H')
+				{
+					if(contains(index+3, "OO", "ER", "EN", "UY", "ED", "EM"))
+					{
+						if(contains(index+3, "ER", "EN")) append("X", "SK");
+						else append("SK");
+					}
+					else if(index == 0 && !isVowel(charAt(3)) && charAt(3) != 'W') append("X", "S");
+					else append("X");
+				}
+				else if(contains(index+2, "I", "E", "Y")) append("S");
+				else append("SK");
+				return index+3;
+			}
+			// french "resnais", "artois"
+			if(index == length-1 && contains(index-2, "AI", "OI")) appendAlternate("S");
+			else append("S");
+			return contains(index+1, "S", "Z") ? index+2 : index+1;
+		}
+
+		private int englishT(int index)
+		{
+			if(contains(index, "TION", "TIA", "TCH"))
+			{
+				append("X");
+				return index+3;
+			}
+			if(contains(index, "TH", "TTH"))
+			{
+				if(contains(index+2, "OM", "AM") || contains(0, "VAN ", "VON ", "SCH")) append("T");
+				else append("0", "T");
+				return index+2;
+			}
+			append("T");
+			return contains(index+1, "T", "D") ? index+2 : index+1;
+		}
+
+		private int englishW(int index)
+		{
+			if(contains(index, "WR"))
+			{
+				append("R");
+				return index+2;
+			}
+			if(index == 0 && (isVowel(charAt(index+1)) || contains(index, "WH")))
+			{
+				if(isVowel(charAt(index+1))) append("A", "F");
+				else append("A");
+				return index+1;
+			}
+			if((index == length-1 && isVowel(charAt(index-1))) || contains(index-1, "EWSKI", "EWSKY", "OWSKI", "OWSKY") || contains(0, "SCH"))
+			{
+				appendAlternate("F");
+				return index+1;
+			}
+			if(contains(index, "WICZ", "WITZ"))
+			{
+				append("TS", "FX");
+				return index+4;
+			}
+			return index+1;
+		}
+
+		private int englishZ(int index)
+		{
+			if(charAt(index+1) == 'H')
+			{
+				append("J");
+				return index+2;
+			}
+			if(contains(index+1, "ZO", "ZI", "ZA") || (slavoGermanic && index > 0 && charAt(index-1) != 'T')) append("S", "TS");
+			else append("S");
+			return skipDouble(index);
+		}
+
+		/* ---------------------------------------- French ---------------------------------------- */
+
+		void french()
+		{
+			for(int i = 0; i < length; i++) value[i] = foldFrench(value[i]);
+
+			int index = 0;
+			while(!isComplete() && index < length)
+			{
+				switch(value[index])
+				{
+					case 'A': case 'E': case 'I': case 'O': case 'U': case 'Y':
+						// "homme" starts with a vowel too
+						if(index == 0 || (index == 1 && value[0] == 'H')) append("A");
+						index++;
+						break;
+					case 'B':
+						append("P");
+						index = skipDouble(index);
+						break;
+					case 'Ç':
+						append("S");
+						index++;
+						break;
+					case 'C':
+						index = frenchC(index);
+						break;
+					case 'D':
+						appendFinal(index, "T");
+						index = skipDouble(index);
+						break;
+					case 'F':
+						append("F");
+						index = skipDouble(index);
+						break;
+					case 'G':
+						index = frenchG(index);
+						break;
+					case 'J':
+						append("J");
+						index++;
+						break;
+					case 'K':
+						append("K");
+						index = skipDouble(index);
+						break;
+					case 'L':
+						index = frenchL(index);
+						break;
+					case 'M':
+						append("M");
+						index = skipDouble(index);
+						break;
+					case 'N':
+						append("N");
+						index = skipDouble(index);
+						break;
+					case 'P':
+						if(charAt(index+1) == 'H')
+						{
+							append("F");
+							index += 2;
+						}
+						else
+						{
+							appendFinal(index, "P");
+							index = skipDouble(index);
+						}
+						break;
+					case 'Q':
+						append("K");
+						index = charAt(index+1) == 'U' ? index+2 : index+1;
+						break;
+					case 'R':
+						// infinitives: "aimer", but "hiver", "mer"
+						if(length > 4 && contains(index-1, "ER") && isFinal(index+1)) appendAlternate("R");
+						else append("R");
+						index = skipDouble(index);
+						break;
+					case 'S':
+						index = frenchS(index);
+						break;
+					case 'T':
+						index = frenchT(index);
+						break;
+					case 'V':
+					case 'W':
+						append("F");
+						index = skipDouble(index);
+						break;
+					case 'X':
+						if(index == 0) append("S");
+						else appendFinal(index, "KS");
+						index = skipDouble(index);
+						break;
+					case 'Z':
+						appendFinal(index, "S");
+						index = skipDouble(index);
+						break;
+					default:
+						// 'H' is silent
+						index++;
+				}
+			}
+		}
+
+		/**
+		 * Removes the accents of the letters, the cedilla being kept
+		 */
+		private char foldFrench(char c)
+		{
+			switch(c)
+			{
+				case 'À': case 'Â': case 'Ä': return 'A';
+				case 'É': case 'È': case 'Ê': case 'Ë': case 'Œ': case 'Æ': return 'E';
+				case 'Î': case 'Ï': return 'I';
+				case 'Ô': case 'Ö': return 'O';
+				case 'Ù': case 'Û': case 'Ü': return 'U';
+				case 'Ÿ': return 'Y';
+				default: return c;
+			}
+		}
+
+		/**
+		 * Checks if the letters from the given index end the word without being pronounced: nothing or a plural "s"
+		 */
+		private boolean isFinal(int index)
+		{
+			return index >= length || (index == length-1 && value[index] == 'S');
+		}
+
+		/**
+		 * Appends a consonant which is silent at the end of a word ("petit", "nez", "pieds") to the alternate key only in that position
+		 */
+		private void appendFinal(int index, String sound)
+		{
+			int next = charAt(index+1) == value[index] ? index+2 : index+1;
+			if(index > 0 && isFinal(next)) appendAlternate(sound);
+			else append(sound);
+		}
+
+		private int frenchC(int index)
+		{
+			if(contains(index, "CH"))
+			{
+				// greek roots: "chrome", "chlore", "orchestre"
+				if(contains(index+2, "R", "L") || contains(index-2, "ORCHES")) append("K");
+				else append("X", "K");
+				return index+2;
+			}
+			if(contains(index, "CC") && contains(index+2, "E", "I", "Y"))
+			{
+				append("KS");
+				return index+2;
+			}
+			if(contains(index+1, "E", "I", "Y"))
+			{
+				append("S");
+				return index+1;
+			}
+			append("K");
+			return contains(index+1, "C", "K", "Q") ? index+2 : index+1;
+		}
+
+		private int frenchG(int index)
+		{
+			if(contains(index, "GN"))
+			{
+				append("N");
+				return index+2;
+			}
+			if(contains(index+1, "E", "I", "Y"))
+			{
+				append("J");
+				return index+1;
+			}
+			append("K");
+			// "guerre", "langue"
+			if(charAt(index+1) == 'U' && isVowel(charAt(index+2))) return index+2;
+			return skipDouble(index);
+		}
+
+		private int frenchL(int index)
+		{
+			if(contains(index-1, "ILL"))
+			{
+				// "travailler", "feuille", but "ville", "mille"
+				if(contains(index-2, "A", "E", "O", "U")) append("Y");
+				else append("Y", "L");
+				return index+2;
+			}
+			append("L");
+			return skipDouble(index);
+		}
+
+		private int frenchS(int index)
+		{
+			if(contains(index, "SCH"))
+			{
+				append("X");
+				return index+3;
+			}
+			if(contains(index, "SC") && contains(index+2, "E", "I", "Y"))
+			{
+				append("S");
+				return index+2;
+			}
+			if(index > 0 && index == length-1)
+			{
+				appendAlternate("S");
+				return index+1;
+			}
+			append("S");
+			return skipDouble(index);
+		}
+
+		private int frenchT(int index)
+		{
+			if(contains(index, "TION"))
+			{
+				// "nation", but "question"
+				if(contains(index-1, "S")) append("T");
+				else append("S", "T");
+				return index+1;
+			}
+			if(contains(index, "TH"))
+			{
+				append("T");
+				return index+2;
+			}
+			appendFinal(index, "T");
+			return skipDouble(index);
+		}
+	}
+}
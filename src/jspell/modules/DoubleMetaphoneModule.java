@@ -0,0 +1,239 @@
+package jspell.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+
+import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
+
+/**
+ * This class implements the {@link Module} interface with the Double Metaphone phonetic algorithm (see {@link DoubleMetaphone}). The Dictionary Locale is taken in account :
+ * the French rules are used for Locale.FRENCH, the English ones otherwise.
+ * <br><br>
+ * The module bakes the primary and alternate keys of every word of the dictionary, in two indexes of word ids. The siblings of a word are the words sharing
+ * one of its keys, ranked by the strength of the match, then by decreasing frequency:
+ * <br> - primary key of the word = primary key of the sibling
+ * <br> - primary key = alternate key, or alternate key = primary key
+ * <br> - alternate key = alternate key.
+ * <br><br>
+ * Unlike {@link SoundexModule}, only the best siblings are returned, and the words of a bucket are only materialized when they are kept.
+ */
+public class DoubleMetaphoneModule implements Module
+{
+	private static final String INDEX_SECTION = "metaphone";
+
+	/**
+	 * Default number of siblings returned.
+	 */
+	public static final int DEFAULT_MAX_SIBLINGS = 3;
+
+	/**
+	 * Default number of symbols of the keys.
+	 */
+	public static final int DEFAULT_KEY_LENGTH = 4;
+
+	private final Dictionary dictionary;
+	private final DoubleMetaphone encoder;
+	private final int keyLength;
+	private final int maxSiblings;
+	/**
+	 * the ids of the words by primary key, and by alternate key when it differs from the primary one, replaced when a word is added
+	 */
+	private volatile IdBuckets primaryWords;
+	private volatile IdBuckets alternateWords;
+
+	/**
+	 * Builds the module with {@link #DEFAULT_MAX_SIBLINGS} siblings and keys of {@link #DEFAULT_KEY_LENGTH} symbols.
+	 * @param d the dictionary
+	 */
+	public DoubleMetaphoneModule(Dictionary d)
+	{
+		this(d, DEFAULT_MAX_SIBLINGS, DEFAULT_KEY_LENGTH);
+	}
+
+	/**
+	 * Complete constructor for the module.
+	 * @param d the dictionary
+	 * @param maxSiblings the maximum number of siblings returned
+	 * @param keyLength the number of symbols of the keys, from 1 to 8. Longer keys give smaller buckets, but miss the siblings differing at the end of long words.
+	 */
+	public DoubleMetaphoneModule(Dictionary d, int maxSiblings, int keyLength)
+	{
+		if(maxSiblings < 1) throw new IllegalArgumentException("At least one sibling must be returned");
+
+		this.dictionary = d;
+		this.encoder = new DoubleMetaphone(d.getLocale() == Locale.FRENCH, keyLength);
+		this.keyLength = keyLength;
+		this.maxSiblings = maxSiblings;
+
+		ByteBuffer index = dictionary.getSnapshotSection(INDEX_SECTION);
+		if(index != null && index.getInt() == keyLength)
+		{
+			primaryWords = IdBuckets.readFrom(index);
+			alternateWords = IdBuckets.readFrom(index);
+			return;
+		}
+
+		WordStore store = dictionary.getWordStore();
+		IdBuckets.Builder primary = new IdBuckets.Builder();
+		IdBuckets.Builder alternate = new IdBuckets.Builder();
+		for(int id = 0; id < store.size(); id++)
+		{
+			long keys = encoder.encode(store.getWord(id));
+			primary.add(DoubleMetaphone.primary(keys), id);
+			if(DoubleMetaphone.alternate(keys) != DoubleMetaphone.primary(keys)) alternate.add(DoubleMetaphone.alternate(keys), id);
+		}
+		primaryWords = primary.build();
+		alternateWords = alternate.build();
+	}
+
+	/**
+	 * Computes the Double Metaphone keys of a word.
+	 * @param word the word
+	 * @return the primary key and the alternate key, which may be the same
+	 */
+	public String[] buildMetaphone(String word)
+	{
+		long keys = encoder.encode(word);
+		return new String[] {DoubleMetaphone.toString(DoubleMetaphone.primary(keys)), DoubleMetaphone.toString(DoubleMetaphone.alternate(keys))};
+	}
+
+	@Override
+	public String[] getNearestSiblings(String word)
+	{
+		long keys = encoder.encode(word);
+		int primary = DoubleMetaphone.primary(keys);
+		int alternate = DoubleMetaphone.alternate(keys);
+		if(primary == 0) return new String[0];
+
+		IdBuckets primaryWords = this.primaryWords;
+		IdBuckets alternateWords = this.alternateWords;
+		Ranking ranking = new Ranking(dictionary.getWordStore(), maxSiblings);
+		ranking.offerAll(primaryWords.get(primary), 0);
+		ranking.offerAll(alternateWords.get(primary), 1);
+		if(alternate != primary)
+		{
+			ranking.offerAll(primaryWords.get(alternate), 1);
+			ranking.offerAll(alternateWords.get(alternate), 2);
+		}
+		ModuleMetrics.countCandidates(ranking.offered);
+		return ranking.toArray();
+	}
+
+	/**
+	 * The best word ids found so far, by match strength then frequency, the first ids winning the ties
+	 */
+	private static final class Ranking
+	{
+		private final WordStore store;
+		private final int published;
+		private final int[] ids;
+		private final int[] levels;
+		private final int[] frequencies;
+		private int size;
+		/**
+		 * the number of ids offered, for the metrics
+		 */
+		int offered;
+
+		Ranking(WordStore store, int capacity)
+		{
+			this.store = store;
+			// a word being added may be indexed before it is published in the store
+			this.published = store.size();
+			this.ids = new int[capacity];
+			this.levels = new int[capacity];
+			this.frequencies = new int[capacity];
+		}
+
+		void offerAll(int[] candidates, int level)
+		{
+			offered += candidates.length;
+			for(int id : candidates)
+			{
+				if(id >= published) continue;
+				int frequency = store.getFrequency(id);
+				if(size == ids.length && !isBetter(level, frequency, size-1)) continue;
+				if(contains(id)) continue;
+
+				int i = Math.min(size, ids.length-1);
+				while(i > 0 && isBetter(level, frequency, i-1))
+				{
+					ids[i] = ids[i-1];
+					levels[i] = levels[i-1];
+					frequencies[i] = frequencies[i-1];
+					i--;
+				}
+				ids[i] = id;
+				levels[i] = level;
+				frequencies[i] = frequency;
+				if(size < ids.length) size++;
+			}
+		}
+
+		private boolean isBetter(int level, int frequency, int i)
+		{
+			return level < levels[i] || (level == levels[i] && frequency > frequencies[i]);
+		}
+
+		/**
+		 * the same word can be found through both keys, with a weaker match the second time
+		 */
+		private boolean contains(int id)
+		{
+			for(int i = 0; i < size; i++)
+			{
+				if(ids[i] == id) return true;
+			}
+			return false;
+		}
+
+		String[] toArray()
+		{
+			String[] words = new String[size];
+			for(int i = 0; i < size; i++) words[i] = store.getWord(ids[i]);
+			return words;
+		}
+	}
+
+	/**
+	 * Returns the number of keys indexed by the module, primary and alternate.
+	 * @return the index size
+	 */
+	@Override
+	public int getIndexSize()
+	{
+		return primaryWords.size() + alternateWords.size();
+	}
+
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			out.writeInt(keyLength);
+			primaryWords.writeTo(out);
+			alternateWords.writeTo(out);
+		}
+		sections.put(INDEX_SECTION, bytes.toByteArray());
+	}
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		// the modules are updated before the word is added to the store, where it will take the next id
+		WordStore store = dictionary.getWordStore();
+		if(store.contains(newWord)) return;
+
+		int id = store.size();
+		long keys = encoder.encode(newWord);
+		if(DoubleMetaphone.alternate(keys) != DoubleMetaphone.primary(keys)) alternateWords = alternateWords.with(DoubleMetaphone.alternate(keys), id);
+		primaryWords = primaryWords.with(DoubleMetaphone.primary(keys), id);
+	}
+}
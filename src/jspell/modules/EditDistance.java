@@ -0,0 +1,260 @@
+package jspell.modules;
+
+/**
+ * Distance functions shared by the modules. None of them allocates memory: the Damerau-Levenshtein distance is computed with the bit-parallel
+ * algorithm of Myers and Hyyrö when the shortest word has at most 64 characters, and with a dynamic programming over buffers kept per thread otherwise.
+ * <br><br>
+ * The Damerau-Levenshtein distance is the restricted one (optimal string alignment): a transposed pair of characters can't be edited again.
+ */
+public final class EditDistance
+{
+	/**
+	 * Bit masks of the pattern characters lower than 256, kept per thread. They are cleared after each use.
+	 */
+	private static final ThreadLocal<long[]> PATTERN_MASKS = ThreadLocal.withInitial(() -> new long[256]);
+
+	/**
+	 * Rows of the dynamic programming, kept per thread: the two previous rows and the current one.
+	 */
+	private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[3][128]);
+
+	private EditDistance()
+	{
+
+	}
+
+	/**
+	 * Returns the Damerau-Levenshtein distance between two words.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @return the distance
+	 */
+	public static int damerauLevenshtein(CharSequence w1, CharSequence w2)
+	{
+		return damerauLevenshtein(w1, w2, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the Damerau-Levenshtein distance between two words, if it is lower or equal to max. The computation stops as soon as the distance is known to be greater than max.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @param max the maximum distance of interest
+	 * @return the distance if it is lower or equal to max, any value greater than max otherwise
+	 */
+	public static int damerauLevenshtein(CharSequence w1, CharSequence w2, int max)
+	{
+		CharSequence pattern = w1.length() <= w2.length() ? w1 : w2;
+		CharSequence text = pattern == w1 ? w2 : w1;
+		int m = pattern.length();
+		int n = text.length();
+
+		if(n - m > max) return n - m;
+		if(m == 0) return n;
+		if(m <= 64) return bitParallel(pattern, text, max);
+		return dynamic(pattern, text, max);
+	}
+
+	/**
+	 * Hyyrö's extension of Myers' algorithm to transpositions. Each bit of the vectors represents one character of the pattern, and one text character
+	 * is processed per step by a few logical operations.
+	 */
+	private static int bitParallel(CharSequence pattern, CharSequence text, int max)
+	{
+		long[] masks = PATTERN_MASKS.get();
+		int m = pattern.length();
+		int n = text.length();
+		for(int i = 0; i < m; i++)
+		{
+			char c = pattern.charAt(i);
+			if(c < 256) masks[c] |= 1L << i;
+		}
+
+		long last = 1L << (m-1);
+		long vp = -1L;
+		long vn = 0;
+		long d0 = 0;
+		long previousMatches = 0;
+		int score = m;
+
+		for(int j = 0; j < n; j++)
+		{
+			char c = text.charAt(j);
+			long matches = c < 256 ? masks[c] : matchesOf(pattern, c);
+
+			long transpositions = (((~d0) & matches) << 1) & previousMatches;
+			d0 = (((matches & vp) + vp) ^ vp) | matches | vn | transpositions;
+			long hp = vn | ~(d0 | vp);
+			long hn = vp & d0;
+
+			if((hp & last) != 0) score++;
+			else if((hn & last) != 0) score--;
+
+			/* the last score can only decrease by one per remaining text character */
+			if(score - (n-1-j) > max)
+			{
+				score = max+1;
+				break;
+			}
+
+			hp = (hp << 1) | 1;
+			hn = hn << 1;
+			vp = hn | ~(d0 | hp);
+			vn = hp & d0;
+			previousMatches = matches;
+		}
+
+		for(int i = 0; i < m; i++)
+		{
+			char c = pattern.charAt(i);
+			if(c < 256) masks[c] = 0;
+		}
+		return score;
+	}
+
+	private static long matchesOf(CharSequence pattern, char c)
+	{
+		long matches = 0;
+		for(int i = 0; i < pattern.length(); i++)
+		{
+			if(pattern.charAt(i) == c) matches |= 1L << i;
+		}
+		return matches;
+	}
+
+	/**
+	 * Classic dynamic programming over three rows, used for the patterns longer than 64 characters.
+	 */
+	private static int dynamic(CharSequence w1, CharSequence w2, int max)
+	{
+		int l1 = w1.length();
+		int l2 = w2.length();
+
+		int[][] rows = ROWS.get();
+		if(rows[0].length <= l2)
+		{
+			rows = new int[3][l2+1];
+			ROWS.set(rows);
+		}
+		int[] beforePrevious = rows[0];
+		int[] previous = rows[1];
+		int[] current = rows[2];
+
+		for(int j = 0; j <= l2; j++) previous[j] = j;
+		int previousMin = 0;
+
+		for(int i = 1; i <= l1; i++)
+		{
+			char c = w1.charAt(i-1);
+			current[0] = i;
+			int min = i;
+			for(int j = 1; j <= l2; j++)
+			{
+				int cost = c == w2.charAt(j-1) ? 0 : 1;
+				int value = Math.min(previous[j]+1, Math.min(current[j-1]+1, previous[j-1]+cost));
+				if(i > 1 && j > 1 && c == w2.charAt(j-2) && w1.charAt(i-2) == w2.charAt(j-1))
+				{
+					value = Math.min(value, beforePrevious[j-2]+cost);
+				}
+				current[j] = value;
+				min = Math.min(min, value);
+			}
+
+			/* the next rows can't go below this row, or one more than the previous row through a transposition */
+			if(Math.min(min, previousMin+1) > max) return max+1;
+			previousMin = min;
+
+			int[] recycled = beforePrevious;
+			beforePrevious = previous;
+			previous = current;
+			current = recycled;
+		}
+		return previous[l2];
+	}
+
+	/**
+	 * Returns the Hamming distance between two words, computed from their left and their right ends. The characters missing from the shortest word are counted as differences.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @return the smallest of the two distances
+	 */
+	public static int hamming(CharSequence w1, CharSequence w2)
+	{
+		int l1 = w1.length();
+		int l2 = w2.length();
+		int shorter = Math.min(l1, l2);
+		int lengthDifference = Math.abs(l1 - l2);
+
+		int leftResult = lengthDifference;
+		int rightResult = lengthDifference;
+		for(int i = 0; i < shorter; i++)
+		{
+			if(w1.charAt(i) != w2.charAt(i)) leftResult++;
+			if(w1.charAt(l1-1-i) != w2.charAt(l2-1-i)) rightResult++;
+		}
+		return Math.min(leftResult, rightResult);
+	}
+
+	/**
+	 * Returns the Hamming distance between two words computed from their left and their right ends, stopping as soon as both exceed the given maximum.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @param max the maximum distance of interest
+	 * @return the smallest of the two distances, or a value greater than max if both are greater than max
+	 */
+	public static int hamming(CharSequence w1, CharSequence w2, int max)
+	{
+		int l1 = w1.length();
+		int l2 = w2.length();
+		int shorter = Math.min(l1, l2);
+		int lengthDifference = Math.abs(l1 - l2);
+		if(lengthDifference > max) return lengthDifference;
+
+		int leftResult = lengthDifference;
+		int rightResult = lengthDifference;
+		for(int i = 0; i < shorter; i++)
+		{
+			if(w1.charAt(i) != w2.charAt(i)) leftResult++;
+			if(w1.charAt(l1-1-i) != w2.charAt(l2-1-i)) rightResult++;
+			if(leftResult > max && rightResult > max) break;
+		}
+		return Math.min(leftResult, rightResult);
+	}
+
+	/**
+	 * Returns the Hamming distance between two words aligned on their first character. The characters missing from the shortest word are counted as differences,
+	 * which makes it a metric.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @return the distance
+	 */
+	public static int hammingLeft(CharSequence w1, CharSequence w2)
+	{
+		int shorter = Math.min(w1.length(), w2.length());
+		int result = Math.abs(w1.length() - w2.length());
+		for(int i = 0; i < shorter; i++)
+		{
+			if(w1.charAt(i) != w2.charAt(i)) result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the Hamming distance between two words aligned on their last character. The characters missing from the shortest word are counted as differences,
+	 * which makes it a metric.
+	 * @param w1 the first word
+	 * @param w2 the second word
+	 * @return the distance
+	 */
+	public static int hammingRight(CharSequence w1, CharSequence w2)
+	{
+		int l1 = w1.length();
+		int l2 = w2.length();
+		int shorter = Math.min(l1, l2);
+		int result = Math.abs(l1 - l2);
+		for(int i = 1; i <= shorter; i++)
+		{
+			if(w1.charAt(l1-i) != w2.charAt(l2-i)) result++;
+		}
+		return result;
+	}
+}
@@ -1,169 +1,339 @@
 package jspell.modules;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
 
 /**
- * This class implements the {@link Module} interface with the Hamming algorithm. It also bakes each word of the dictionary with a circle system:
- * <br> - it calculates the average length of the words of the dictionary
- * <br> - it chooses a word with this length, or the nearest length found
- * <br> - it sorts words according to their distance from this word.
- * <br><br> 
- * When searching for a word, it will calculates its distance from the origin word, and then only search for siblings in its own circle, and a defined number of circles around, to prevent
- * it from searching for siblings in the whole dictionary if possible.
+ * This class implements the {@link Module} interface with the Hamming algorithm. It also bakes each word of the dictionary with a pivot system (LAESA):
+ * <br> - it chooses a few pivot words, as far as possible from each other
+ * <br> - it computes the distance of each word from every pivot
+ * <br> - it groups the words by length.
+ * <br><br>
+ * When searching for a word, it calculates its distance from the pivots. By the triangle inequality, a word can't be closer to it than the difference between their
+ * distances from any pivot: the words whose lower bound exceeds the search radius are skipped before computing any exact distance. The distance being at least
+ * the difference of the lengths, only the words whose length is within the radius are considered.
+ * <br><br>
+ * The distance of the module is the smallest of the Hamming distances computed from the left and from the right ends of the words (see {@link EditDistance#hamming(CharSequence, CharSequence)}).
+ * Each of them is a metric, but not their minimum: the distances from the pivots are kept for both alignments, and a word is only skipped when both lower bounds exceed the radius.
+ * <br><br>
+ * The buckets keep the ids of the words in the word store of the dictionary, whose characters are compared without building the words.
  */
 public class HammingModule implements Module
 {
+	private static final String INDEX_SECTION = "hamming";
 	
-	private String origin;
-	private HashMap<Integer,Set<String>> harmmingWords;
-	private Dictionary dictionary;
+	/**
+	 * Default search radius.
+	 */
+	public static final int DEFAULT_RADIUS = 2;
 	
+	/**
+	 * Default number of pivots.
+	 */
+	public static final int DEFAULT_PIVOTS = 8;
+	
+	/**
+	 * Number of words among which the pivots are chosen.
+	 */
+	private static final int PIVOT_SAMPLE = 4096;
+	
+	/**
+	 * The ids of the words of one length and their distances from the pivots. The arrays may be longer than the number of words, and are shared with the next bucket
+	 * when a word is added: a bucket is never modified once published.
+	 */
+	private static final class Bucket
+	{
+		final int[] ids;
+		/**
+		 * for the word i, its left distances from the pivots then its right distances, from distances[2*pivots*i], capped at 255
+		 */
+		final byte[] distances;
+		final int size;
+		
+		Bucket(int[] ids, byte[] distances, int size)
+		{
+			this.ids = ids;
+			this.distances = distances;
+			this.size = size;
+		}
+	}
+	
+	private final Dictionary dictionary;
+	private final int radius;
+	private String[] pivots;
+	/**
+	 * the buckets by word length, replaced when a word is added
+	 */
+	private volatile Bucket[] buckets;
+	
+	/**
+	 * Builds the module with a radius of {@link #DEFAULT_RADIUS} and {@link #DEFAULT_PIVOTS} pivots.
+	 * @param dictionary the dictionary
+	 */
 	public HammingModule(Dictionary dictionary)
 	{
+		this(dictionary, DEFAULT_RADIUS, DEFAULT_PIVOTS);
+	}
+	
+	/**
+	 * Complete constructor for the module.
+	 * @param dictionary the dictionary
+	 * @param radius the maximum distance of the siblings
+	 * @param pivotCount the number of pivots. More pivots skip more words, but each word checked compares more distances.
+	 */
+	public HammingModule(Dictionary dictionary, int radius, int pivotCount)
+	{
+		if(radius < 0) throw new IllegalArgumentException("The radius can't be negative");
+		if(pivotCount < 1) throw new IllegalArgumentException("At least one pivot is needed");
+		
 		this.dictionary = dictionary;
-		Set<String> wordSet = dictionary.getWords().keySet();
-		this.origin = averageString(wordSet);
-		this.harmmingWords = new HashMap<>();
-		for(String word : wordSet)
-		{
-			Integer distance = hammingDistance(origin, word);
-			Set<String> set = harmmingWords.get(distance);
-			if(set == null)
-			{
-				set = new HashSet<>();
-				harmmingWords.put(distance, set);
-			}
-			set.add(word);
+		this.radius = radius;
+		ByteBuffer section = dictionary.getSnapshotSection(INDEX_SECTION);
+		if(section != null && section.getInt(0) == pivotCount)
+		{
+			readIndex(section);
+			return;
+		}
+		
+		WordStore store = dictionary.getWordStore();
+		int size = store.size();
+		int[] counts = new int[1];
+		for(int id = 0; id < size; id++)
+		{
+			int length = store.getLength(id);
+			if(length >= counts.length) counts = Arrays.copyOf(counts, length+1);
+			counts[length]++;
 		}
+		this.pivots = choosePivots(store, size, pivotCount);
+		
+		Bucket[] buckets = new Bucket[counts.length];
+		for(int length = 0; length < counts.length; length++)
+		{
+			buckets[length] = new Bucket(new int[counts[length]], new byte[counts[length] * 2 * pivots.length], 0);
+		}
+		for(int id = 0; id < size; id++)
+		{
+			CharSequence word = store.getChars(id);
+			Bucket bucket = buckets[word.length()];
+			bucket.ids[bucket.size] = id;
+			computeDistances(word, bucket.distances, bucket.size);
+			buckets[word.length()] = new Bucket(bucket.ids, bucket.distances, bucket.size+1);
+		}
+		this.buckets = buckets;
 	}
 	
-	private int hammingDistance(String word1, String word2)
+	/**
+	 * Chooses the pivots among a sample of the words: each new pivot is the word farthest from the pivots already chosen.
+	 */
+	private static String[] choosePivots(WordStore store, int size, int count)
 	{
-		/* decoupage des mots en tableau de caract�re */
-		char[] s1 = word1.toCharArray();
-	    char[] s2 = word2.toCharArray();
-
-	    /* calcul de la plus petite et grande taille */
-	    int shorter = Math.min(s1.length, s2.length);
-	    int longest = Math.max(s1.length, s2.length);
-
-	    /* calcul à gauche */
-	    int leftResult = 0;
-	    for (int i=0; i<shorter; i++)
-	    {
-	        if (s1[i] != s2[i]) leftResult++;
-	    }
-	    leftResult += longest - shorter;
-	    
-	    /* calcul � droite */
-	    int rightResult = 0;
-	    for (int i=0; i<shorter; i++)
-	    {
-	        if (s1[(s1.length - 1) - i] != s2[(s2.length - 1) - i]) rightResult++;
-	    }
-	    rightResult += longest - shorter;
-
-	    /* on renvoie la plus petite distance */
-	    return Math.min(leftResult, rightResult);
+		if(size == 0) return new String[] {""};
+		
+		int step = Math.max(1, size / PIVOT_SAMPLE);
+		String[] sample = new String[(size + step - 1) / step];
+		for(int i = 0; i < sample.length; i++) sample[i] = store.getWord(i*step);
+		
+		String[] pivots = new String[Math.min(count, sample.length)];
+		int[] nearest = new int[sample.length];
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		String pivot = sample[0];
+		for(int p = 0; p < pivots.length; p++)
+		{
+			pivots[p] = pivot;
+			int farthest = 0;
+			for(int i = 0; i < sample.length; i++)
+			{
+				nearest[i] = Math.min(nearest[i], EditDistance.hamming(pivot, sample[i]));
+				if(nearest[i] > nearest[farthest]) farthest = i;
+			}
+			pivot = sample[farthest];
+		}
+		return pivots;
 	}
 	
-	private String averageString(Set<String> set)
+	/**
+	 * Computes the distances of a word from the pivots, into the slot i of a distances array
+	 */
+	private void computeDistances(CharSequence word, byte[] distances, int i)
 	{
-		/* sauvegarde des mots pour eviter de reparcourir l'ensemble */
-		Map<Integer, String> existingString = new HashMap<>();
-		/* compteur de mots et somme de la longueur des mots */
-		int nbWord = 0, sumLength = 0;
-		/* pour chaque mot */
-		for(String word : set)
-		{
-			nbWord++;
-			int wordLength = word.length();
-			sumLength+=wordLength;
-			/* si il y a pas deja un mot sauvegarder on save */
-			if(!existingString.containsKey(wordLength))
-				existingString.put(wordLength, word);
-		}
-		int averageLength = sumLength/nbWord;
-		int i = 0;
-		String result;
-		/* on modifie pas existingString donc sert � v�rifi� qu'il y a un mot */
-		while(!existingString.isEmpty())
-		{
-			if((result = existingString.get(averageLength + i)) != null)
-				return result;
-			if((result = existingString.get(averageLength - i)) != null)
-				return result;
-			i++;
-		}
-		return null;
+		int offset = 2 * pivots.length * i;
+		for(int p = 0; p < pivots.length; p++)
+		{
+			distances[offset + p] = (byte)Math.min(255, EditDistance.hammingLeft(word, pivots[p]));
+			distances[offset + pivots.length + p] = (byte)Math.min(255, EditDistance.hammingRight(word, pivots[p]));
+		}
 	}
 	
 	@Override
 	public String[] getNearestSiblings(String word)
 	{
-		/* Tableau des resultats */
-		String[] result = new String[3];
-		/* Tableau de la distance des resultats */
-		Integer[] resultDistance = new Integer[3];
-		/* -1 pour detecter l'absence d'un mot */
-		Arrays.fill(resultDistance, -1);
+		String query = word.toLowerCase();
+		Bucket[] buckets = this.buckets;
+		int k = pivots.length;
+		int[] queryLeft = new int[k];
+		int[] queryRight = new int[k];
+		for(int p = 0; p < k; p++)
+		{
+			queryLeft[p] = Math.min(255, EditDistance.hammingLeft(query, pivots[p]));
+			queryRight[p] = Math.min(255, EditDistance.hammingRight(query, pivots[p]));
+		}
 		
-		int distanceFromOrigin = hammingDistance(origin, word);
-		/* Cr�ation d'un ensemble de mots ayant une distance depuis l'origin entre distanceFromOrigin - 2 et + 2*/
-		Set<String> set = new HashSet<>();
-		for (int count = 0; count <= 2; count++)
+		SiblingsCollector siblings = new SiblingsCollector(dictionary, 3);
+		WordStore store = dictionary.getWordStore();
+		int published = store.size();
+		int bound = radius;
+		/* the words of the same length first, they are the most likely to be close */
+		for(int offset = 0; offset <= bound; offset++)
 		{
-			/* cr�ation du set avec le mot d'une distance de count */
-			set.addAll(harmmingWords.get(distanceFromOrigin + count));
-			set.addAll(harmmingWords.get(distanceFromOrigin - count));
+			int shorter = query.length() - offset;
+			if(shorter >= 0 && shorter < buckets.length) bound = search(store, published, buckets[shorter], query, queryLeft, queryRight, siblings, bound);
+			int longer = query.length() + offset;
+			if(offset > 0 && offset <= bound && longer < buckets.length) bound = search(store, published, buckets[longer], query, queryLeft, queryRight, siblings, bound);
 		}
-		/* Pour chaque mot du set */
-		for(String current : set)
+		return siblings.toArray();
+	}
+	
+	/**
+	 * Checks the words of a bucket
+	 * @return the search radius, shrunk to the distance of the worst sibling once the collector is full
+	 */
+	private int search(WordStore store, int published, Bucket bucket, String query, int[] queryLeft, int[] queryRight, SiblingsCollector siblings, int bound)
+	{
+		int k = queryLeft.length;
+		byte[] distances = bucket.distances;
+		int compared = 0;
+		for(int i = 0; i < bucket.size; i++)
 		{
-			int distanceFromWord = hammingDistance(word, current);
-			/* parcours des mots sauvegardees */
-			for(int i = 0; i <= (resultDistance.length - 1); i++)
+			int offset = 2 * k * i;
+			
+			/* lower bounds of the left and right distances, the word is skipped when both exceed the radius */
+			boolean left = true;
+			boolean right = true;
+			for(int p = 0; p < k && (left || right); p++)
 			{
-				/* On regarde si il est plus proche que les mots sauvegard� */
-				if(resultDistance[i] == -1 || 
-					resultDistance[i] > distanceFromWord || 
-					(resultDistance[i] == distanceFromWord && 
-						dictionary.getProbability(result[i]) > dictionary.getProbability(current)))
-				{
-					/* On decale s'il il est plus proche */
-					for(int j = 1; j <= (resultDistance.length - 1) - i; j++)
-					{
-						resultDistance[resultDistance.length - j] = resultDistance[resultDistance.length - 1 - j];
-						result[resultDistance.length - j] = result[resultDistance.length - 1 - j];
-					}
-					
-					/* On sauvegarde la nouvelle valeur */
-					resultDistance[i] = distanceFromWord;
-					result[i] = current;
-					break;
-				}
+				if(left && Math.abs(queryLeft[p] - (distances[offset + p] & 0xFF)) > bound) left = false;
+				if(right && Math.abs(queryRight[p] - (distances[offset + k + p] & 0xFF)) > bound) right = false;
 			}
+			// a word being added may be indexed before it is published in the store
+			int id = bucket.ids[i];
+			if((!left && !right) || id >= published) continue;
+			// an abandoned search stops with the siblings found so far
+			if(Thread.currentThread().isInterrupted()) break;
+			
+			int distance = EditDistance.hamming(query, store.getChars(id), bound);
+			compared++;
+			if(distance <= bound)
+			{
+				siblings.offer(id, distance);
+				bound = Math.min(bound, siblings.worstDistance());
+			}
+		}
+		ModuleMetrics.countCandidates(compared);
+		return bound;
+	}
+	
+	/**
+	 * Restores the pivots and the buckets saved in a snapshot by {@link #saveIndex(Map)}
+	 */
+	private void readIndex(ByteBuffer in)
+	{
+		this.pivots = new String[in.getInt()];
+		for(int p = 0; p < pivots.length; p++)
+		{
+			char[] pivot = new char[in.getShort() & 0xFFFF];
+			for(int j = 0; j < pivot.length; j++) pivot[j] = in.getChar();
+			pivots[p] = new String(pivot);
+		}
+		
+		Bucket[] buckets = new Bucket[in.getInt()];
+		for(int length = 0; length < buckets.length; length++)
+		{
+			int size = in.getInt();
+			int[] ids = new int[size];
+			for(int i = 0; i < size; i++) ids[i] = in.getInt();
+			byte[] distances = new byte[size * 2 * pivots.length];
+			in.get(distances);
+			buckets[length] = new Bucket(ids, distances, size);
 		}
-		return result;
+		this.buckets = buckets;
+	}
+	
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		Bucket[] buckets = this.buckets;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			out.writeInt(pivots.length);
+			for(String pivot : pivots)
+			{
+				out.writeShort(pivot.length());
+				out.writeChars(pivot);
+			}
+			out.writeInt(buckets.length);
+			for(Bucket bucket : buckets)
+			{
+				out.writeInt(bucket.size);
+				for(int i = 0; i < bucket.size; i++) out.writeInt(bucket.ids[i]);
+				out.write(bucket.distances, 0, bucket.size * 2 * pivots.length);
+			}
+		}
+		sections.put(INDEX_SECTION, bytes.toByteArray());
+	}
+	
+	/**
+	 * Returns the number of words indexed by the module.
+	 * @return the index size
+	 */
+	@Override
+	public int getIndexSize()
+	{
+		int size = 0;
+		for(Bucket bucket : buckets) size += bucket.size;
+		return size;
 	}
 	
 	@Override
 	public void updateModule(String newWord) 
 	{
-		Integer distance = hammingDistance(origin, newWord);
-		Set<String> set = harmmingWords.get(distance);
-		if(set == null)
+		// the modules are updated before the word is added to the store, where it will take the next id
+		WordStore store = dictionary.getWordStore();
+		if(store.contains(newWord)) return;
+		
+		Bucket[] buckets = this.buckets;
+		int length = newWord.length();
+		if(length >= buckets.length)
+		{
+			int previous = buckets.length;
+			buckets = Arrays.copyOf(buckets, length+1);
+			for(int l = previous; l <= length; l++) buckets[l] = new Bucket(new int[0], new byte[0], 0);
+		}
+		else
 		{
-			set = new HashSet<>();
-			harmmingWords.put(distance, set);
+			buckets = buckets.clone();
 		}
-		set.add(newWord);
+		
+		Bucket bucket = buckets[length];
+		int[] ids = bucket.ids;
+		byte[] distances = bucket.distances;
+		if(bucket.size == ids.length)
+		{
+			ids = Arrays.copyOf(ids, Math.max(4, ids.length*2));
+			distances = Arrays.copyOf(distances, ids.length * 2 * pivots.length);
+		}
+		/* the slot is beyond the size of the published bucket, no search reads it */
+		ids[bucket.size] = store.size();
+		computeDistances(newWord, distances, bucket.size);
+		buckets[length] = new Bucket(ids, distances, bucket.size+1);
+		this.buckets = buckets;
 	}
-
 }
@@ -0,0 +1,231 @@
+package jspell.modules;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable map from int keys (phonetic codes, n-grams, ...) to buckets of word ids, for the indexes of the modules. The keys are kept in an open addressing
+ * hash table and each bucket is a plain int array: no boxing, and one array per key instead of one object per word.
+ * <br><br>
+ * A map is never modified: {@link #with(int, int)} returns a new map sharing the untouched buckets, so a module can publish it through a volatile field while
+ * searches read the previous one. Large maps are built with a {@link Builder}.
+ */
+final class IdBuckets
+{
+	private static final int[] NO_IDS = new int[0];
+
+	private final int[] keys;
+	/**
+	 * the bucket of the key in the same slot, or null if the slot is free
+	 */
+	private final int[][] buckets;
+	private final int size;
+
+	private IdBuckets(int[] keys, int[][] buckets, int size)
+	{
+		this.keys = keys;
+		this.buckets = buckets;
+		this.size = size;
+	}
+
+	private static int slot(int key, int mask)
+	{
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot of a key in a table, or the free slot where it would be inserted
+	 */
+	private static int find(int[] keys, int[][] buckets, int key)
+	{
+		int mask = keys.length-1;
+		int slot = slot(key, mask);
+		while(buckets[slot] != null && keys[slot] != key) slot = (slot+1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Returns the ids of a key. The array must not be modified.
+	 * @param key the key
+	 * @return the ids, in the order they have been added, or an empty array
+	 */
+	int[] get(int key)
+	{
+		int[] ids = buckets[find(keys, buckets, key)];
+		return ids == null ? NO_IDS : ids;
+	}
+
+	/**
+	 * Returns the number of keys
+	 * @return the number of buckets
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns a copy of this map with an id added to the bucket of a key. The other buckets are shared.
+	 * @param key the key
+	 * @param id the id, which must not be in the bucket yet
+	 * @return the new map
+	 */
+	IdBuckets with(int key, int id)
+	{
+		return with(new int[] {key}, id);
+	}
+
+	/**
+	 * Returns a copy of this map with an id added to the buckets of several keys, copying the table only once. The other buckets are shared.
+	 * @param newKeys the keys, without duplicates
+	 * @param id the id, which must not be in the buckets yet
+	 * @return the new map
+	 */
+	IdBuckets with(int[] newKeys, int id)
+	{
+		int capacity = this.keys.length;
+		while(2*(size+newKeys.length) > capacity) capacity *= 2;
+
+		int[] keys;
+		int[][] buckets;
+		if(capacity != this.keys.length)
+		{
+			keys = new int[capacity];
+			buckets = new int[capacity][];
+			for(int slot = 0; slot < this.keys.length; slot++)
+			{
+				if(this.buckets[slot] == null) continue;
+				int target = find(keys, buckets, this.keys[slot]);
+				keys[target] = this.keys[slot];
+				buckets[target] = this.buckets[slot];
+			}
+		}
+		else
+		{
+			keys = this.keys.clone();
+			buckets = this.buckets.clone();
+		}
+
+		int size = this.size;
+		for(int key : newKeys)
+		{
+			int slot = find(keys, buckets, key);
+			int[] ids = buckets[slot];
+			if(ids == null) size++;
+			ids = ids == null ? new int[1] : Arrays.copyOf(ids, ids.length+1);
+			ids[ids.length-1] = id;
+			keys[slot] = key;
+			buckets[slot] = ids;
+		}
+		return new IdBuckets(keys, buckets, size);
+	}
+
+	/**
+	 * Writes the map, in the format read by {@link #readFrom(ByteBuffer)}.
+	 * @param out the output stream
+	 * @throws IOException if the map can't be written
+	 */
+	void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeInt(size);
+		for(int slot = 0; slot < keys.length; slot++)
+		{
+			if(buckets[slot] == null) continue;
+			out.writeInt(keys[slot]);
+			out.writeInt(buckets[slot].length);
+			for(int id : buckets[slot]) out.writeInt(id);
+		}
+	}
+
+	/**
+	 * Reads a map written by {@link #writeTo(DataOutputStream)}.
+	 * @param in the buffer, whose position is moved after the map
+	 * @return the map
+	 */
+	static IdBuckets readFrom(ByteBuffer in)
+	{
+		int size = in.getInt();
+		int capacity = Integer.highestOneBit(Math.max(4, size) * 2 - 1) << 1;
+		int[] keys = new int[capacity];
+		int[][] buckets = new int[capacity][];
+		for(int i = 0; i < size; i++)
+		{
+			int key = in.getInt();
+			int[] ids = new int[in.getInt()];
+			in.asIntBuffer().get(ids);
+			in.position(in.position() + 4*ids.length);
+			int slot = find(keys, buckets, key);
+			keys[slot] = key;
+			buckets[slot] = ids;
+		}
+		return new IdBuckets(keys, buckets, size);
+	}
+
+	/**
+	 * Accumulates the ids of a whole dictionary before building the map. The buckets grow by doubling, then are trimmed by {@link #build()}.
+	 */
+	static final class Builder
+	{
+		private int[] keys = new int[64];
+		private int[][] buckets = new int[64][];
+		private int[] counts = new int[64];
+		private int size;
+
+		/**
+		 * Adds an id to the bucket of a key
+		 * @param key the key
+		 * @param id the id
+		 */
+		void add(int key, int id)
+		{
+			if(2*(size+1) > keys.length) grow();
+			int slot = find(keys, buckets, key);
+			int[] ids = buckets[slot];
+			if(ids == null)
+			{
+				keys[slot] = key;
+				buckets[slot] = ids = new int[2];
+				size++;
+			}
+			else if(counts[slot] == ids.length)
+			{
+				buckets[slot] = ids = Arrays.copyOf(ids, ids.length*2);
+			}
+			ids[counts[slot]++] = id;
+		}
+
+		private void grow()
+		{
+			int[] oldKeys = keys;
+			int[][] oldBuckets = buckets;
+			int[] oldCounts = counts;
+			keys = new int[oldKeys.length*2];
+			buckets = new int[oldKeys.length*2][];
+			counts = new int[oldKeys.length*2];
+			for(int slot = 0; slot < oldKeys.length; slot++)
+			{
+				if(oldBuckets[slot] == null) continue;
+				int target = find(keys, buckets, oldKeys[slot]);
+				keys[target] = oldKeys[slot];
+				buckets[target] = oldBuckets[slot];
+				counts[target] = oldCounts[slot];
+			}
+		}
+
+		/**
+		 * Builds the map. The builder must not be used afterwards.
+		 * @return the map
+		 */
+		IdBuckets build()
+		{
+			for(int slot = 0; slot < keys.length; slot++)
+			{
+				if(buckets[slot] != null && buckets[slot].length != counts[slot]) buckets[slot] = Arrays.copyOf(buckets[slot], counts[slot]);
+			}
+			return new IdBuckets(keys, buckets, size);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package jspell.modules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jspell.Metrics;
+import jspell.ModuleMetrics;
+import jspell.SuggestionCache;
+
+/**
+ * A Module measuring the searches of another one in its {@link ModuleMetrics}, while the {@link Metrics} are enabled. Otherwise the searches are only delegated.
+ * <br><br>
+ * The {@link ModuleAggregator} instruments each of its modules, and the dictionaries instrument the module they are built with when it isn't an aggregator.
+ * <br><br>
+ * The answers of the measured searches are kept for the last {@link SuggestionCache#DEFAULT_CAPACITY} words, to check the sibling chosen by the user
+ * against the siblings the module proposed for the word.
+ */
+public final class InstrumentedModule implements Module
+{
+	private final Module module;
+	private final ModuleMetrics metrics;
+	private final LinkedHashMap<String, String[]> answers;
+
+	private InstrumentedModule(Module module)
+	{
+		this.module = module;
+		this.metrics = new ModuleMetrics(module);
+		this.answers = new LinkedHashMap<String, String[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest)
+			{
+				return size() > SuggestionCache.DEFAULT_CAPACITY;
+			}
+		};
+	}
+
+	/**
+	 * Instruments a module, unless it is an aggregator (whose modules are instrumented) or already instrumented.
+	 * @param module the module
+	 * @return the instrumented module
+	 */
+	public static Module instrument(Module module)
+	{
+		if(module instanceof InstrumentedModule || module instanceof ModuleAggregator) return module;
+		return new InstrumentedModule(module);
+	}
+
+	/**
+	 * Returns the instrumented modules found in a module: itself if it is instrumented, or the modules of an aggregator.
+	 * @param module the module
+	 * @return the instrumented modules, in the order of the aggregator
+	 */
+	public static List<InstrumentedModule> find(Module module)
+	{
+		List<InstrumentedModule> found = new ArrayList<>();
+		if(module instanceof InstrumentedModule)
+		{
+			found.add((InstrumentedModule)module);
+		}
+		else if(module instanceof ModuleAggregator)
+		{
+			for(Module m : ((ModuleAggregator)module).modules) found.addAll(find(m));
+		}
+		return found;
+	}
+
+	/**
+	 * Getter for the metrics of the module
+	 * @return the metrics
+	 */
+	public ModuleMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	@Override
+	public String[] getNearestSiblings(String word)
+	{
+		if(!Metrics.isEnabled()) return module.getNearestSiblings(word);
+
+		long candidates = ModuleMetrics.countedCandidates();
+		long start = System.nanoTime();
+		String[] siblings = module.getNearestSiblings(word);
+		metrics.recordSearch(System.nanoTime() - start, ModuleMetrics.countedCandidates() - candidates, siblings.length);
+		synchronized(answers)
+		{
+			answers.put(word, siblings.clone());
+		}
+		return siblings;
+	}
+
+	/**
+	 * Checks if the module proposed the sibling chosen by the user for an unknown word, in the answer recorded when the word was searched. The choice
+	 * isn't counted if the word wasn't searched while the metrics were enabled, or if its answer is no longer kept.
+	 * @param word the unknown word
+	 * @param sibling the sibling chosen
+	 */
+	public void siblingChosen(String word, String sibling)
+	{
+		String[] answer;
+		synchronized(answers)
+		{
+			answer = answers.get(word);
+		}
+		if(answer == null) return;
+
+		boolean proposed = false;
+		for(String s : answer)
+		{
+			if(sibling.equalsIgnoreCase(s)) proposed = true;
+		}
+		metrics.recordChoice(proposed);
+	}
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		module.updateModule(newWord);
+	}
+
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		module.saveIndex(sections);
+	}
+
+	@Override
+	public int getIndexSize()
+	{
+		return module.getIndexSize();
+	}
+}
@@ -0,0 +1,160 @@
+package jspell.modules;
+
+import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
+
+/**
+ * This class implements the {@link Module} interface by walking a {@link WordTrie} of the dictionary together with the Damerau-Levenshtein automaton of the unknown word.
+ * <br><br>
+ * Each node of the trie adds one row to the distance matrix, computed from the rows of its parents: the common prefixes of the words are only computed once,
+ * and a whole subtree is skipped as soon as its rows can't lead to a word within the searched distance. The search is run with a growing distance,
+ * from 0 to maxDistance, until enough siblings are found.
+ * <br><br>
+ * The trie is copied when a word is added, and the copy replaces it once complete: a search always walks a trie which isn't modified.
+ */
+public class LevenshteinAutomatonModule implements Module
+{
+	private final Dictionary dictionary;
+	private volatile WordTrie trie;
+	private final int maxDistance;
+
+	/**
+	 * Builds the module with a maximum distance of 3.
+	 * @param d the dictionary
+	 */
+	public LevenshteinAutomatonModule(Dictionary d)
+	{
+		this(d, 3);
+	}
+
+	/**
+	 * Complete constructor for the module.
+	 * @param d the dictionary
+	 * @param maxDistance the maximum distance of the siblings
+	 */
+	public LevenshteinAutomatonModule(Dictionary d, int maxDistance)
+	{
+		if(maxDistance < 0) throw new IllegalArgumentException("The maximum distance can't be negative");
+
+		this.dictionary = d;
+		this.maxDistance = maxDistance;
+		WordStore store = dictionary.getWordStore();
+		WordTrie trie = new WordTrie();
+		for(int id = 0; id < store.size(); id++) trie.add(store.getChars(id));
+		this.trie = trie;
+	}
+
+	@Override
+	public String[] getNearestSiblings(String word)
+	{
+		SiblingsCollector siblings = new SiblingsCollector(dictionary, 3);
+		Search search = new Search(trie, word.toLowerCase(), siblings);
+		for(int bound = 0; bound <= maxDistance && !siblings.isFull(); bound++)
+		{
+			search.run(bound);
+		}
+		ModuleMetrics.countCandidates(search.visited);
+		return siblings.toArray();
+	}
+
+	/**
+	 * Returns the number of nodes of the trie of the module.
+	 * @return the index size
+	 */
+	@Override
+	public int getIndexSize()
+	{
+		return trie.nodeCount();
+	}
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		WordTrie copy = trie.copy();
+		copy.add(newWord);
+		trie = copy;
+	}
+
+	/**
+	 * State of one search: the trie being walked, and the rows of the distance matrix for its current path. They are allocated once per search.
+	 */
+	private final class Search
+	{
+		private final WordTrie trie;
+		private final String query;
+		private final SiblingsCollector siblings;
+		private final int[][] rows;
+		private final int[] rowMins;
+		private final char[] path;
+		private int bound;
+		/**
+		 * the number of nodes visited by all the runs, for the metrics
+		 */
+		int visited;
+
+		Search(WordTrie trie, String query, SiblingsCollector siblings)
+		{
+			this.trie = trie;
+			this.query = query;
+			this.siblings = siblings;
+			int depth = trie.maxLength();
+			this.rows = new int[depth+1][query.length()+1];
+			this.rowMins = new int[depth+1];
+			this.path = new char[depth];
+			for(int j = 0; j <= query.length(); j++) rows[0][j] = j;
+		}
+
+		/**
+		 * Offers to the collector the words whose distance is exactly the bound, the closer ones having been found by the previous runs.
+		 */
+		void run(int bound)
+		{
+			this.bound = bound;
+			visit(0, 0);
+		}
+
+		private void visit(int node, int depth)
+		{
+			// an abandoned search stops with the siblings found so far
+			if(Thread.currentThread().isInterrupted()) return;
+
+			int l = query.length();
+			int i = depth+1;
+			for(int child = trie.firstChild(node); child != 0; child = trie.nextSibling(child))
+			{
+				char c = trie.label(child);
+				path[depth] = c;
+				visited++;
+
+				int[] row = rows[i];
+				int[] previous = rows[i-1];
+				row[0] = i;
+				int min = i;
+				for(int j = 1; j <= l; j++)
+				{
+					int cost = c == query.charAt(j-1) ? 0 : 1;
+					int value = Math.min(previous[j]+1, Math.min(row[j-1]+1, previous[j-1]+cost));
+					if(i > 1 && j > 1 && c == query.charAt(j-2) && path[depth-1] == query.charAt(j-1))
+					{
+						value = Math.min(value, rows[i-2][j-2]+cost);
+					}
+					row[j] = value;
+					min = Math.min(min, value);
+				}
+				rowMins[i] = min;
+
+				if(trie.isTerminal(child) && row[l] == bound)
+				{
+					siblings.offer(new String(path, 0, i), bound);
+				}
+
+				/* the next rows can't go below this row, or one more than the previous row through a transposition */
+				if(Math.min(min, rowMins[i-1]+1) <= bound && trie.firstChild(child) != 0)
+				{
+					visit(child, i);
+				}
+			}
+		}
+	}
+}
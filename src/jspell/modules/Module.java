@@ -1,5 +1,8 @@
 package jspell.modules;
 
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * Interface representing a siblings searching module. The search algorithm is detailled by all implementing classes.
  *
@@ -8,6 +11,9 @@ public interface Module
 {
 	/**
 	 * Returns the nearest siblings. See implementation detail in the classes implementing this interface.
+	 * <br><br>
+	 * A module may stop searching when its thread is interrupted, and return the siblings found so far: the {@link ModuleAggregator} interrupts
+	 * the modules which don't answer in time.
 	 * @param word the unknown word
 	 * @return the siblings list
 	 */
@@ -21,4 +27,25 @@ public interface Module
 	{
 		
 	}
+	
+	/**
+	 * This method is called when a binary snapshot of the dictionary is written, to save the precomputed data of the module. The module restores them in its
+	 * constructor through {@link jspell.Dictionary#getSnapshotSection(String)}, instead of computing them again.
+	 * @param sections the sections of the snapshot, by name, to which the module adds its own
+	 * @throws IOException if the data can't be written
+	 */
+	public default void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		
+	}
+	
+	/**
+	 * Returns the size of the index of the module, published with its metrics (see {@link jspell.Metrics}): its number of keys, nodes or indexed words,
+	 * depending on the structure of the index.
+	 * @return the index size, or -1 if the module has no index
+	 */
+	public default int getIndexSize()
+	{
+		return -1;
+	}
 }
\ No newline at end of file
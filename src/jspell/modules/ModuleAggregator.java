@@ -1,40 +1,298 @@
 package jspell.modules;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import jspell.Dictionary;
+import jspell.Metrics;
 
 /**
- * A Module regrouping all other modules and gathering their answers when a search is asked. The {@link DamerauLevenshteinModule} is considered the most precise module, with {@link HammingModule} and {@link SoundexModule} behind.
+ * A Module regrouping all other modules and gathering their answers when a search is asked. The {@link DamerauLevenshteinModule} is considered the most precise module, with {@link HammingModule},
+ * {@link DoubleMetaphoneModule} and {@link SoundexModule} behind.
+ * <br><br>
+ * The modules are run concurrently, on at most {@link #MAX_THREADS} threads shared by all the aggregators. A search waits for them at most for the timeout
+ * of the aggregator: the modules still running after it are interrupted, and given {@link #GRACE_PERIOD} more to return the siblings they have found so far.
+ * The search loops of the modules stop when their thread is interrupted, so an abandoned module doesn't keep its thread busy. An answer with the partial
+ * siblings of a module, or missing a module, is reported as incomplete (see {@link #answer(Module, String)}), so that it isn't kept in a cache.
+ * <br><br>
+ * The answers are merged by score: the n-th module of the list (from 0) has a weight of 1/(n+1), and each sibling it proposes scores this weight divided by its rank in the answer (from 1).
+ * The scores of a sibling proposed by several modules are added.
+ * <br><br>
+ * Each module is wrapped in an {@link InstrumentedModule}, so that its latency, its timeouts and its picks are measured separately when the {@link jspell.Metrics} are enabled.
  */
-public class ModuleAggregator implements Module 
+public class ModuleAggregator implements Module
 {
+	/**
+	 * Default time given to the modules to answer a search, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 200;
+
+	/**
+	 * Time given to the interrupted modules to return the siblings found before the timeout, in milliseconds.
+	 */
+	public static final long GRACE_PERIOD = 20;
+
+	/**
+	 * Maximum number of siblings returned by a search.
+	 */
+	public static final int MAX_SIBLINGS = 7;
+
+	/**
+	 * Maximum number of threads running the modules, shared by all the aggregators. When they are all busy, the modules wait for a thread within the timeout
+	 * of their search.
+	 */
+	public static final int MAX_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Threads running the modules, stopped after a minute without searches. They are daemon threads so that an abandoned module doesn't keep the program alive.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+
+	private static ThreadPoolExecutor newExecutor()
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, "jspell-module");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * The siblings found by a search, and whether they are complete
+	 */
+	public static final class Answer
+	{
+		private final String[] siblings;
+		private final boolean complete;
+
+		Answer(String[] siblings, boolean complete)
+		{
+			this.siblings = siblings;
+			this.complete = complete;
+		}
+
+		/**
+		 * Getter for the siblings found
+		 * @return the siblings, the best first
+		 */
+		public String[] getSiblings()
+		{
+			return siblings;
+		}
+
+		/**
+		 * Returns true if all the modules answered the search in time, and no search was interrupted
+		 * @return true if the answer is complete
+		 */
+		public boolean isComplete()
+		{
+			return complete;
+		}
+	}
+
 	List<Module> modules;
-	
+
+	private volatile long timeout = DEFAULT_TIMEOUT;
+
 	public ModuleAggregator(Dictionary d)
 	{
 		this.modules = new LinkedList<Module>();
-			modules.add(new DamerauLevenshteinModule(d));
-			modules.add(new HammingModule(d));
-			modules.add(new SoundexModule(d));
+			modules.add(InstrumentedModule.instrument(new DamerauLevenshteinModule(d)));
+			modules.add(InstrumentedModule.instrument(new HammingModule(d)));
+			modules.add(InstrumentedModule.instrument(new DoubleMetaphoneModule(d)));
+			modules.add(InstrumentedModule.instrument(new SoundexModule(d)));
 	}
-	
+
+	/**
+	 * Builds an aggregator over the given modules, for example to add a {@link SymSpellModule}. The modules are listed from the most precise to the least precise.
+	 * @param modules the aggregated modules
+	 */
+	public ModuleAggregator(Module... modules)
+	{
+		this.modules = new LinkedList<Module>();
+		for(Module m : modules) this.modules.add(InstrumentedModule.instrument(m));
+	}
+
+	/**
+	 * Sets the time given to the modules to answer a search.
+	 * @param timeout the timeout, in milliseconds
+	 */
+	public void setTimeout(long timeout)
+	{
+		if(timeout < 0) throw new IllegalArgumentException("The timeout can't be negative");
+		this.timeout = timeout;
+	}
+
 	@Override
 	public String[] getNearestSiblings(String word)
 	{
-		List<String> words = new ArrayList<>();
-		
+		return search(word).getSiblings();
+	}
+
+	/**
+	 * Searches the nearest siblings of a word, as {@link #getNearestSiblings(String)}, telling if all the modules answered in time.
+	 * @param word the unknown word
+	 * @return the answer
+	 */
+	public Answer search(String word)
+	{
+		List<Answer> answers = modules.size() == 1 ? Collections.singletonList(answer(modules.get(0), word)) : collectAnswers(word);
+		boolean complete = true;
+		for(Answer answer : answers)
+		{
+			if(answer == null || !answer.isComplete()) complete = false;
+		}
+		return new Answer(merge(answers), complete);
+	}
+
+	/**
+	 * Searches the nearest siblings of a word with a module, telling if its answer is complete: the answer of an aggregator is incomplete when one of its modules
+	 * didn't answer in time, the answer of any module when its search has been interrupted.
+	 * @param module the module
+	 * @param word the unknown word
+	 * @return the answer of the module
+	 */
+	public static Answer answer(Module module, String word)
+	{
+		if(module instanceof ModuleAggregator) return ((ModuleAggregator)module).search(word);
+
+		String[] siblings = module.getNearestSiblings(word);
+		return new Answer(siblings, !Thread.currentThread().isInterrupted());
+	}
+
+	/**
+	 * Runs the modules concurrently and waits for their answers until the timeout. Each module completes its own result, so that the partial answer
+	 * of an interrupted module can still be collected.
+	 * @return the answers, in the modules order, null for the modules which didn't answer
+	 */
+	private List<Answer> collectAnswers(String word)
+	{
+		List<CompletableFuture<Answer>> results = new ArrayList<>();
+		List<Future<?>> tasks = new ArrayList<>();
 		for(Module m : modules)
 		{
-			words.addAll(Arrays.asList(m.getNearestSiblings(word)));
+			CompletableFuture<Answer> result = new CompletableFuture<>();
+			results.add(result);
+			tasks.add(EXECUTOR.submit(() -> {
+				try
+				{
+					result.complete(answer(m, word));
+				}
+				catch(Throwable t)
+				{
+					result.completeExceptionally(t);
+				}
+			}));
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		Answer[] answers = new Answer[modules.size()];
+		try
+		{
+			for(int i = 0; i < answers.length; i++) answers[i] = await(results.get(i), deadline, word);
+
+			// interrupts the late modules, or removes them from the queue if they are still waiting for a thread
+			boolean[] late = new boolean[answers.length];
+			for(int i = 0; i < answers.length; i++)
+			{
+				if(results.get(i).isDone()) continue;
+				late[i] = true;
+				tasks.get(i).cancel(true);
+				EXECUTOR.remove((Runnable)tasks.get(i));
+				recordTimeout(modules.get(i));
+			}
+
+			long grace = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_PERIOD);
+			for(int i = 0; i < answers.length; i++)
+			{
+				if(!late[i]) continue;
+				Answer partial = await(results.get(i), grace, word);
+				if(partial != null) answers[i] = new Answer(partial.getSiblings(), false);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			for(Future<?> task : tasks)
+			{
+				task.cancel(true);
+				EXECUTOR.remove((Runnable)task);
+			}
+			Thread.currentThread().interrupt();
 		}
-		int max = Math.min(7, words.size());
-		return words.subList(0, max).toArray(new String[0]);
+		return Arrays.asList(answers);
 	}
-	
+
+	/**
+	 * Waits for the answer of a module until a deadline
+	 * @return the answer, or null if the module failed or didn't answer in time
+	 */
+	private static Answer await(CompletableFuture<Answer> result, long deadline, String word) throws InterruptedException
+	{
+		try
+		{
+			return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		catch(TimeoutException e)
+		{
+			return null;
+		}
+		catch(ExecutionException e)
+		{
+			System.err.println("A module failed to search the siblings of \""+word+"\": "+e.getCause());
+			return null;
+		}
+	}
+
+	private static void recordTimeout(Module m)
+	{
+		if(!Metrics.isEnabled()) return;
+		for(InstrumentedModule instrumented : InstrumentedModule.find(m)) instrumented.getMetrics().recordTimeout();
+	}
+
+	/**
+	 * Merges the answers of the modules by score, without duplicates.
+	 */
+	private String[] merge(List<Answer> answers)
+	{
+		/* insertion order breaks the ties: the best module and rank first */
+		Map<String, Double> scores = new LinkedHashMap<>();
+		for(int i = 0; i < answers.size(); i++)
+		{
+			if(answers.get(i) == null) continue;
+			String[] answer = answers.get(i).getSiblings();
+
+			double weight = 1.0 / (i+1);
+			for(int rank = 0; rank < answer.length; rank++)
+			{
+				if(answer[rank] == null) continue;
+				scores.merge(answer[rank], weight / (rank+1), Double::sum);
+			}
+		}
+
+		List<Map.Entry<String, Double>> ranking = new ArrayList<>(scores.entrySet());
+		Collections.sort(ranking, (e1, e2) -> Double.compare(e2.getValue(), e1.getValue()));
+
+		int max = Math.min(MAX_SIBLINGS, ranking.size());
+		String[] siblings = new String[max];
+		for(int i = 0; i < max; i++) siblings[i] = ranking.get(i).getKey();
+		return siblings;
+	}
+
 	public void updateModule(String newWord)
 	{
 		for(Module m : modules)
@@ -42,4 +300,13 @@ public class ModuleAggregator implements Module
 			m.updateModule(newWord);
 		}
 	}
+	
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		for(Module m : modules)
+		{
+			m.saveIndex(sections);
+		}
+	}
 }
@@ -0,0 +1,105 @@
+package jspell.modules;
+
+import java.util.Arrays;
+
+import jspell.Dictionary;
+
+/**
+ * Bounded collection of the best siblings found so far for a search. Siblings are ordered by distance, then by decreasing probability in the dictionary,
+ * then alphabetically so that the result doesn't depend on the iteration order of the dictionary.
+ */
+final class SiblingsCollector
+{
+	private final Dictionary dictionary;
+	private final String[] siblings;
+	private final int[] distances;
+	private int size;
+
+	SiblingsCollector(Dictionary dictionary, int capacity)
+	{
+		this.dictionary = dictionary;
+		this.siblings = new String[capacity];
+		this.distances = new int[capacity];
+	}
+
+	/**
+	 * Proposes a sibling to the collector.
+	 * @param word the sibling
+	 * @param distance its distance from the searched word
+	 * @return true if the sibling has been kept
+	 */
+	boolean offer(String word, int distance)
+	{
+		if(siblings.length == 0) return false;
+		if(size == siblings.length && !isBetter(word, distance, siblings[size-1], distances[size-1])) return false;
+
+		int i = Math.min(size, siblings.length-1);
+		while(i > 0 && isBetter(word, distance, siblings[i-1], distances[i-1]))
+		{
+			siblings[i] = siblings[i-1];
+			distances[i] = distances[i-1];
+			i--;
+		}
+		siblings[i] = word;
+		distances[i] = distance;
+		if(size < siblings.length) size++;
+		return true;
+	}
+
+	/**
+	 * Proposes a word of the word store of the dictionary to the collector. The word is only built if it is kept.
+	 * @param id the id of the sibling in the word store
+	 * @param distance its distance from the searched word
+	 * @return true if the sibling has been kept
+	 */
+	boolean offer(int id, int distance)
+	{
+		if(siblings.length == 0) return false;
+		if(size == siblings.length && distance > distances[size-1]) return false;
+		return offer(dictionary.getWordStore().getWord(id), distance);
+	}
+
+	private boolean isBetter(String w1, int d1, String w2, int d2)
+	{
+		if(d1 != d2) return d1 < d2;
+		int p = Double.compare(dictionary.getProbability(w1), dictionary.getProbability(w2));
+		if(p != 0) return p > 0;
+		return w1.compareTo(w2) < 0;
+	}
+
+	/**
+	 * Proposes all the siblings of another collector, for example to merge the results of several partitions of a search.
+	 * @param other the other collector
+	 */
+	void offerAll(SiblingsCollector other)
+	{
+		for(int i = 0; i < other.size; i++) offer(other.siblings[i], other.distances[i]);
+	}
+
+	/**
+	 * Returns true when the collector holds as many siblings as requested.
+	 * @return true if the collector is full
+	 */
+	boolean isFull()
+	{
+		return size == siblings.length;
+	}
+
+	/**
+	 * Returns the largest distance a new sibling can have while still being kept, that is the distance of the worst kept sibling once the collector is full.
+	 * @return the distance bound, or Integer.MAX_VALUE if the collector isn't full yet
+	 */
+	int worstDistance()
+	{
+		return isFull() && size > 0 ? distances[size-1] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the kept siblings, best first.
+	 * @return the siblings
+	 */
+	String[] toArray()
+	{
+		return Arrays.copyOf(siblings, size);
+	}
+}
@@ -1,24 +1,43 @@
 package jspell.modules;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
 
 import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
 
 /**
  * This class implements the {@link Module} interface with the Soundex algorithm. The Dictionary Locale is taken in account : the letters categories will be ajusted to fit the locale, Locale.FRENCH or Locale.US.
  * The class bakes the soundex ids linked to each and every word in the dictionary.
+ * <br><br>
+ * A soundex is packed in an int: the first letter in the upper 16 bits, then the three digits on 4 bits each. The digit of each letter is read from a table
+ * built from the categories, so encoding a word allocates nothing. The words are indexed by their id in the word store of the dictionary, in {@link IdBuckets}.
  */
 public class SoundexModule implements Module
 {
+	private static final String INDEX_SECTION = "soundex";
+	
+	/**
+	 * the letters which are dropped after the first one
+	 */
+	private static final String IGNORED_LETTERS = "AEIOUYWH";
+	
 	private final Dictionary dictionary;
-	private final HashMap<String, Set<String>> soundexWords;
+	/**
+	 * the ids of the words by soundex, replaced when a word is added
+	 */
+	private volatile IdBuckets soundexWords;
 	private char[][] categories;
+	/**
+	 * digits['A'..'Z' - 'A']: the digit of the letter, 0 if it is in no category
+	 */
+	private final byte[] digits = new byte[26];
 	
 	public SoundexModule(Dictionary d)
 	{
@@ -26,104 +45,136 @@ public class SoundexModule implements Module
 		
 		buildCategories();
 		
-		Set<String> wordSet = dictionary.getWords().keySet();
+		ByteBuffer index = dictionary.getSnapshotSection(INDEX_SECTION);
+		if(index != null)
+		{
+			soundexWords = IdBuckets.readFrom(index);
+			return;
+		}
 		
-		soundexWords = new HashMap<>();
-		for(String word : wordSet)
+		WordStore store = dictionary.getWordStore();
+		IdBuckets.Builder builder = new IdBuckets.Builder();
+		for(int id = 0; id < store.size(); id++) builder.add(encode(store.getWord(id)), id);
+		soundexWords = builder.build();
+	}
+	
+	/**
+	 * Computes the soundex of a word, packed in an int
+	 * @param word the word
+	 * @return the packed soundex, 0 for an empty word
+	 */
+	public int encode(CharSequence word)
+	{
+		int length = word.length();
+		if(length == 0) return 0;
+		
+		char last = Character.toUpperCase(word.charAt(0));
+		int code = last;
+		int count = 0;
+		for(int i = 1; i < length && count < 3; i++)
 		{
-			String soundex = buildSoundex(word);
-			Set<String> set = soundexWords.get(soundex);
-			if(set == null)
-			{
-				set = new HashSet<>();
-				soundexWords.put(soundex, set);
-			}
-			set.add(word);
+			char c = Character.toUpperCase(word.charAt(i));
+			if(c == last || IGNORED_LETTERS.indexOf(c) != -1) continue;
+			code = (code << 4) | getDigit(c);
+			last = c;
+			count++;
 		}
+		return code << 4*(3-count);
+	}
+	
+	/**
+	 * Returns the text form of a packed soundex, such as "R163"
+	 * @param soundex the packed soundex
+	 * @return the soundex
+	 */
+	public static String toString(int soundex)
+	{
+		char[] chars = new char[4];
+		chars[0] = (char)(soundex >>> 12);
+		for(int i = 1; i < 4; i++) chars[i] = (char)('0' + ((soundex >>> 4*(3-i)) & 0xF));
+		return new String(chars);
 	}
 	
 	public String buildSoundex(String originalWord)
 	{
-		char[] word = buildUsableWord(originalWord.toUpperCase());
-		char[] soundex = new char[4];
-		soundex[0] = word[0];
-		for(int i=1; i<4; i++)soundex[i] = '0';
-		
-		int max = Math.min(word.length, 4);
-		
-		for(int i=1; i < max; i++) soundex[i] = getNumberRepresentation(word[i]);
-		
-		String soundexWord = "";
-		for(char c : soundex) soundexWord+=c;
-		
-		return soundexWord;
+		return toString(encode(originalWord));
 	}
 	
 	public char[] buildUsableWord(String originalWord)
 	{
-		List<Character> list = new ArrayList<>();
-		Character[] fc = new Character[] {'A', 'E', 'I', 'O', 'U', 'Y', 'W', 'H'};
-		List<Character> forbiddenCharacters = Arrays.asList(fc);
-		
-		int i=0;
+		StringBuilder word = new StringBuilder(originalWord.length());
 		char lastChar = ' ';
-		for(char c : originalWord.toCharArray())
+		for(int i = 0; i < originalWord.length(); i++)
 		{
-			if((i==0 || !(forbiddenCharacters.contains(c))) && lastChar != c)
+			char c = originalWord.charAt(i);
+			if((i==0 || IGNORED_LETTERS.indexOf(c) == -1) && lastChar != c)
 			{
-				list.add(c);
+				word.append(c);
 				lastChar = c;
 			}
-			i++;
 		}
 		
-		String word = "";
-		for(char c : list)
-		{
-			word += c;
-		}
-		
-		return word.toCharArray();
+		char[] chars = new char[word.length()];
+		word.getChars(0, chars.length, chars, 0);
+		return chars;
 	}
 	
 	public char getNumberRepresentation(char c)
 	{
-		for(int i = 0; i < categories.length; i++)
-		{
-			char[] letters = categories[i];
-			for(char letter : letters)
-			{
-				if(letter == c)
-				{
-					char res = (char) (i+1+'0');
-					return String.valueOf(res).charAt(0);
-				}
-			}
-		}
-		return '0';
+		return (char)('0' + getDigit(c));
+	}
+	
+	private int getDigit(char c)
+	{
+		return c >= 'A' && c <= 'Z' ? digits[c - 'A'] : 0;
 	}
 	
 	@Override
 	public String[] getNearestSiblings(String word) 
 	{
-		String soundex = buildSoundex(word);
-		Set<String> set = soundexWords.get(soundex);
-		if(set == null) return new String[0];
+		WordStore store = dictionary.getWordStore();
+		int published = store.size();
+		int[] ids = soundexWords.get(encode(word));
+		ModuleMetrics.countCandidates(ids.length);
 		
-		return set.toArray(new String[0]);
+		int count = 0;
+		String[] siblings = new String[ids.length];
+		for(int id : ids)
+		{
+			// a word being added may be indexed before it is published in the store
+			if(id < published) siblings[count++] = store.getWord(id);
+		}
+		return count == siblings.length ? siblings : Arrays.copyOf(siblings, count);
 	}
 	
+	/**
+	 * Returns the number of soundex codes indexed by the module.
+	 * @return the index size
+	 */
 	@Override
-	public void updateModule(String newWord) 
+	public int getIndexSize()
 	{
-		String soundex = buildSoundex(newWord);
-		Set<String> set = soundexWords.get(soundex);
-		if(set == null)
+		return soundexWords.size();
+	}
+	
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
 		{
-			set = new HashSet<>();
-			soundexWords.put(soundex, set);
+			soundexWords.writeTo(out);
 		}
-		set.add(newWord);
+		sections.put(INDEX_SECTION, bytes.toByteArray());
+	}
+	
+	@Override
+	public void updateModule(String newWord) 
+	{
+		// the modules are updated before the word is added to the store, where it will take the next id
+		WordStore store = dictionary.getWordStore();
+		if(store.contains(newWord)) return;
+		soundexWords = soundexWords.with(encode(newWord), store.size());
 	}
 	
 	public void buildCategories()
@@ -155,5 +206,12 @@ public class SoundexModule implements Module
 							{'R'}
 						};
 		}
+		
+		/* a letter in several categories takes the first one */
+		Arrays.fill(digits, (byte)0);
+		for(int i = categories.length-1; i >= 0; i--)
+		{
+			for(char letter : categories[i]) digits[letter - 'A'] = (byte)(i+1);
+		}
 	}
 }
@@ -0,0 +1,182 @@
+package jspell.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
+
+/**
+ * This class implements the {@link Module} interface with the symmetric delete algorithm (SymSpell). The module bakes, for every word of the dictionary,
+ * all the strings obtained by deleting up to maxDistance characters, and indexes the words by these deletes.
+ * <br><br>
+ * When searching for a word, the deletes of the unknown word are generated and looked up in the index: only the words sharing a delete with it
+ * are compared with the Damerau-Levenshtein distance, instead of the whole dictionary.
+ * <br><br>
+ * To bound the memory used on large dictionaries, the deletes are only generated on the first prefixLength characters of the words. The candidates
+ * found on the prefix are then checked on the whole word.
+ * <br><br>
+ * The index maps each delete to the ids of its words in the word store of the dictionary. It is a concurrent map whose arrays are replaced, never modified,
+ * when a word is added: searches don't block while the index is updated.
+ */
+public class SymSpellModule implements Module
+{
+	private final Dictionary dictionary;
+	private final int maxDistance;
+	private final int prefixLength;
+	private final ConcurrentHashMap<String, int[]> deletes;
+
+	/**
+	 * Builds the module with a maximum distance of 2 and a prefix length of 7.
+	 * @param d the dictionary
+	 */
+	public SymSpellModule(Dictionary d)
+	{
+		this(d, 2, 7);
+	}
+
+	/**
+	 * Complete constructor for the module.
+	 * @param d the dictionary
+	 * @param maxDistance the maximum edit distance of the siblings
+	 * @param prefixLength the number of characters of each word used to generate the deletes. Lower values use less memory, but more candidates will be checked.
+	 */
+	public SymSpellModule(Dictionary d, int maxDistance, int prefixLength)
+	{
+		if(maxDistance < 0) throw new IllegalArgumentException("The maximum distance can't be negative");
+		if(prefixLength <= maxDistance) throw new IllegalArgumentException("The prefix length must be greater than the maximum distance");
+
+		this.dictionary = d;
+		this.maxDistance = maxDistance;
+		this.prefixLength = prefixLength;
+		this.deletes = new ConcurrentHashMap<>();
+
+		/* the buckets are grown as lists first, copying the arrays for each word would be quadratic on the short deletes */
+		WordStore store = dictionary.getWordStore();
+		HashMap<String, List<Integer>> buckets = new HashMap<>();
+		for(int id = 0; id < store.size(); id++)
+		{
+			for(String delete : buildDeletes(prefixOf(store.getChars(id))))
+			{
+				List<Integer> ids = buckets.get(delete);
+				if(ids == null)
+				{
+					ids = new ArrayList<>(1);
+					buckets.put(delete, ids);
+				}
+				ids.add(id);
+			}
+		}
+		for(Map.Entry<String, List<Integer>> bucket : buckets.entrySet())
+		{
+			List<Integer> ids = bucket.getValue();
+			int[] array = new int[ids.size()];
+			for(int i = 0; i < array.length; i++) array[i] = ids.get(i);
+			deletes.put(bucket.getKey(), array);
+		}
+	}
+
+	private String prefixOf(CharSequence word)
+	{
+		return word.subSequence(0, Math.min(word.length(), prefixLength)).toString();
+	}
+
+	/**
+	 * Returns the given string and all the strings obtained by deleting up to maxDistance of its characters.
+	 */
+	private Set<String> buildDeletes(String key)
+	{
+		Set<String> result = new HashSet<>();
+		result.add(key);
+		List<String> current = new ArrayList<>();
+		current.add(key);
+
+		for(int distance = 1; distance <= maxDistance; distance++)
+		{
+			List<String> next = new ArrayList<>();
+			for(String s : current)
+			{
+				for(int i = 0; i < s.length(); i++)
+				{
+					String delete = s.substring(0, i) + s.substring(i+1);
+					if(result.add(delete)) next.add(delete);
+				}
+			}
+			current = next;
+		}
+		return result;
+	}
+
+	@Override
+	public String[] getNearestSiblings(String word)
+	{
+		SiblingsCollector siblings = new SiblingsCollector(dictionary, 3);
+		WordStore store = dictionary.getWordStore();
+		int published = store.size();
+		String input = word.toLowerCase();
+		BitSet checked = new BitSet();
+		for(String delete : buildDeletes(prefixOf(input)))
+		{
+			// an abandoned search stops with the siblings found so far
+			if(Thread.currentThread().isInterrupted()) break;
+			int[] ids = deletes.get(delete);
+			if(ids == null) continue;
+
+			for(int id : ids)
+			{
+				// a word being added may be indexed before it is published in the store
+				if(id >= published || checked.get(id)) continue;
+				CharSequence candidate = store.getChars(id);
+				if(Math.abs(candidate.length() - input.length()) > maxDistance) continue;
+				checked.set(id);
+
+				int distance = EditDistance.damerauLevenshtein(candidate, input, Math.min(maxDistance, siblings.worstDistance()));
+				if(distance <= maxDistance) siblings.offer(id, distance);
+			}
+		}
+		ModuleMetrics.countCandidates(checked.cardinality());
+		return siblings.toArray();
+	}
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		// the modules are updated before the word is added to the store, where it will take the next id
+		WordStore store = dictionary.getWordStore();
+		if(store.contains(newWord)) return;
+
+		int id = store.size();
+		for(String delete : buildDeletes(prefixOf(newWord)))
+		{
+			int[] ids = deletes.get(delete);
+			if(ids == null)
+			{
+				deletes.put(delete, new int[] {id});
+			}
+			else
+			{
+				ids = Arrays.copyOf(ids, ids.length+1);
+				ids[ids.length-1] = id;
+				deletes.put(delete, ids);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of deletes indexed by the module.
+	 * @return the index size
+	 */
+	@Override
+	public int getIndexSize()
+	{
+		return deletes.size();
+	}
+}
@@ -0,0 +1,278 @@
+package jspell.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import jspell.Dictionary;
+import jspell.ModuleMetrics;
+import jspell.WordStore;
+
+/**
+ * This class implements the {@link Module} interface with an inverted index of the character trigrams of the words. The words are padded with two start marks
+ * and two end marks, so that a word of n letters has n+2 trigrams ("^^a", "^ab", ..., "yz$", "z$$"), and each distinct trigram lists the ids of the words containing it.
+ * <br><br>
+ * An edit changes at most 3 trigrams of a word, and a transposition 4: a word within a distance k of the searched word shares at least |T| - 4k of its distinct
+ * trigrams T (count filter). When searching, the lists of the trigrams of the word are merged to count the trigrams each word shares with it, and only the
+ * words reaching the threshold are compared with the Damerau-Levenshtein distance. Unlike {@link HammingModule}, the trigrams don't depend on the position of the
+ * letters, so the siblings differing by an inserted or deleted letter are found as well.
+ * <br><br>
+ * The threshold is only positive for words long enough: the shorter words are compared with the words of the lengths within the distance, from an index of the words by length.
+ */
+public class TrigramModule implements Module
+{
+	private static final String INDEX_SECTION = "trigrams";
+
+	private static final char START = '\u0002';
+	private static final char END = '\u0003';
+
+	/**
+	 * Number of trigrams an edit can change: a transposition changes q+1 of them.
+	 */
+	private static final int GRAMS_PER_EDIT = 4;
+
+	/**
+	 * Occurrences of each word id while merging the lists, reset after each search
+	 */
+	private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[0]);
+
+	private final Dictionary dictionary;
+	private final int maxDistance;
+	/**
+	 * the ids of the words by trigram, and by length, replaced when a word is added
+	 */
+	private volatile IdBuckets postings;
+	private volatile IdBuckets lengths;
+
+	/**
+	 * Builds the module with a maximum distance of 2.
+	 * @param d the dictionary
+	 */
+	public TrigramModule(Dictionary d)
+	{
+		this(d, 2);
+	}
+
+	/**
+	 * Complete constructor for the module.
+	 * @param d the dictionary
+	 * @param maxDistance the maximum Damerau-Levenshtein distance of the siblings
+	 */
+	public TrigramModule(Dictionary d, int maxDistance)
+	{
+		if(maxDistance < 0) throw new IllegalArgumentException("The maximum distance can't be negative");
+
+		this.dictionary = d;
+		this.maxDistance = maxDistance;
+
+		ByteBuffer index = dictionary.getSnapshotSection(INDEX_SECTION);
+		if(index != null)
+		{
+			postings = IdBuckets.readFrom(index);
+			lengths = IdBuckets.readFrom(index);
+			return;
+		}
+
+		WordStore store = dictionary.getWordStore();
+		IdBuckets.Builder postings = new IdBuckets.Builder();
+		IdBuckets.Builder lengths = new IdBuckets.Builder();
+		for(int id = 0; id < store.size(); id++)
+		{
+			String word = store.getWord(id);
+			for(int trigram : trigrams(word)) postings.add(trigram, id);
+			lengths.add(word.length(), id);
+		}
+		this.postings = postings.build();
+		this.lengths = lengths.build();
+	}
+
+	/**
+	 * Returns the distinct trigrams of a word, sorted
+	 */
+	private static int[] trigrams(String word)
+	{
+		int length = word.length();
+		int[] trigrams = new int[length+2];
+		for(int i = -2; i < length; i++)
+		{
+			trigrams[i+2] = trigram(charAt(word, i), charAt(word, i+1), charAt(word, i+2));
+		}
+		Arrays.sort(trigrams);
+
+		int distinct = 0;
+		for(int i = 0; i < trigrams.length; i++)
+		{
+			if(i == 0 || trigrams[i] != trigrams[i-1]) trigrams[distinct++] = trigrams[i];
+		}
+		return Arrays.copyOf(trigrams, distinct);
+	}
+
+	private static char charAt(String word, int i)
+	{
+		if(i < 0) return START;
+		if(i >= word.length()) return END;
+		return word.charAt(i);
+	}
+
+	/**
+	 * Packs a trigram in an int: exactly for the characters below U+0400, which take 10 bits each, hashed for the others. A collision can only count
+	 * a shared trigram too many, so it never loses a sibling.
+	 */
+	private static int trigram(char a, char b, char c)
+	{
+		if(a < 0x400 && b < 0x400 && c < 0x400) return (a << 20) | (b << 10) | c;
+		int h = (a * 31 + b) * 31 + c;
+		return 0x40000000 | ((h ^ (h >>> 15)) & 0x3FFFFFFF);
+	}
+
+	@Override
+	public String[] getNearestSiblings(String word)
+	{
+		String query = word.toLowerCase();
+		int[] trigrams = trigrams(query);
+
+		/* the filter is much stronger for a small distance: the distance is only raised while fewer than 3 siblings are found */
+		SiblingsCollector siblings = null;
+		for(int distance = Math.min(1, maxDistance); distance <= maxDistance; distance++)
+		{
+			siblings = new SiblingsCollector(dictionary, 3);
+			search(query, trigrams, distance, siblings);
+			if(siblings.isFull() && siblings.worstDistance() <= distance) break;
+		}
+		return siblings.toArray();
+	}
+
+	/**
+	 * Collects the siblings within a distance of the searched word
+	 */
+	private void search(String query, int[] trigrams, int distance, SiblingsCollector siblings)
+	{
+		int threshold = trigrams.length - GRAMS_PER_EDIT * distance;
+		if(threshold > 0)
+		{
+			verify(countFilter(trigrams, threshold), query, distance, siblings);
+			return;
+		}
+
+		/* the words of the same length first, the next lengths are skipped once the siblings found are closer */
+		IdBuckets lengths = this.lengths;
+		for(int offset = 0; offset <= Math.min(distance, siblings.worstDistance()); offset++)
+		{
+			verify(lengths.get(query.length() - offset), query, distance, siblings);
+			if(offset > 0) verify(lengths.get(query.length() + offset), query, distance, siblings);
+		}
+	}
+
+	/**
+	 * Compares the candidates with the searched word, keeping the ones within the radius
+	 */
+	private void verify(int[] candidates, String query, int radius, SiblingsCollector siblings)
+	{
+		WordStore store = dictionary.getWordStore();
+		// a word being added may be indexed before it is published in the store
+		int published = store.size();
+		int compared = 0;
+		for(int id : candidates)
+		{
+			// an abandoned search stops with the siblings found so far
+			if(Thread.currentThread().isInterrupted()) break;
+			if(id >= published) continue;
+			int bound = Math.min(radius, siblings.worstDistance());
+			if(Math.abs(store.getLength(id) - query.length()) > bound) continue;
+
+			String candidate = store.getWord(id);
+			int distance = EditDistance.damerauLevenshtein(candidate, query, bound);
+			compared++;
+			if(distance <= radius) siblings.offer(candidate, distance);
+		}
+		ModuleMetrics.countCandidates(compared);
+	}
+
+	/**
+	 * Returns the ids of the words sharing at least threshold of the given trigrams. A word reaching the threshold is necessarily in one of the
+	 * (lists - threshold + 1) shortest lists: only these are merged, counting the occurrences of each id in an array indexed by the ids, and the candidates
+	 * they give are then looked up in the longest lists.
+	 */
+	private int[] countFilter(int[] trigrams, int threshold)
+	{
+		IdBuckets postings = this.postings;
+		int[][] lists = new int[trigrams.length][];
+		for(int i = 0; i < trigrams.length; i++) lists[i] = postings.get(trigrams[i]);
+		Arrays.sort(lists, (l1, l2) -> Integer.compare(l1.length, l2.length));
+
+		// a word being added may be indexed before it is published in the store
+		int published = dictionary.getWordStore().size();
+		int[] counts = COUNTS.get();
+		if(counts.length < published)
+		{
+			counts = new int[published + published/2];
+			COUNTS.set(counts);
+		}
+
+		int shortLists = lists.length - threshold + 1;
+		int total = 0;
+		for(int i = 0; i < shortLists; i++) total += lists[i].length;
+		int[] candidates = new int[total];
+		int found = 0;
+		for(int i = 0; i < shortLists; i++)
+		{
+			for(int id : lists[i])
+			{
+				if(id < published && counts[id]++ == 0) candidates[found++] = id;
+			}
+		}
+
+		int count = 0;
+		for(int c = 0; c < found; c++)
+		{
+			int id = candidates[c];
+			int shared = counts[id];
+			counts[id] = 0;
+			for(int i = shortLists; i < lists.length && shared < threshold && shared + lists.length - i >= threshold; i++)
+			{
+				// the lists are sorted, the ids being given in insertion order
+				if(Arrays.binarySearch(lists[i], id) >= 0) shared++;
+			}
+			if(shared >= threshold) candidates[count++] = id;
+		}
+		return Arrays.copyOf(candidates, count);
+	}
+
+	@Override
+	public void saveIndex(Map<String, byte[]> sections) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			postings.writeTo(out);
+			lengths.writeTo(out);
+		}
+		sections.put(INDEX_SECTION, bytes.toByteArray());
+	}
+
+	@Override
+	public void updateModule(String newWord)
+	{
+		// the modules are updated before the word is added to the store, where it will take the next id
+		WordStore store = dictionary.getWordStore();
+		if(store.contains(newWord)) return;
+
+		String word = newWord.toLowerCase();
+		int id = store.size();
+		lengths = lengths.with(word.length(), id);
+		postings = postings.with(trigrams(word), id);
+	}
+
+	/**
+	 * Returns the number of distinct trigrams indexed by the module.
+	 * @return the index size
+	 */
+	@Override
+	public int getIndexSize()
+	{
+		return postings.size();
+	}
+}
@@ -0,0 +1,138 @@
+package jspell.modules;
+
+import java.util.Arrays;
+
+/**
+ * Compact trie of words. The nodes are stored in parallel arrays (label, first child, next sibling, end of word flag) instead of one object per node,
+ * and the words themselves are only stored as paths: a word shares its prefix with all the other words starting the same way.
+ * <br><br>
+ * The node 0 is the root. A child or sibling index of 0 means there is no such node.
+ */
+final class WordTrie
+{
+	private char[] labels;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private boolean[] terminal;
+	private int nodes;
+	private int words;
+	private int maxLength;
+
+	WordTrie()
+	{
+		labels = new char[1024];
+		firstChild = new int[1024];
+		nextSibling = new int[1024];
+		terminal = new boolean[1024];
+		nodes = 1;
+	}
+
+	private WordTrie(WordTrie other)
+	{
+		labels = other.labels.clone();
+		firstChild = other.firstChild.clone();
+		nextSibling = other.nextSibling.clone();
+		terminal = other.terminal.clone();
+		nodes = other.nodes;
+		words = other.words;
+		maxLength = other.maxLength;
+	}
+
+	/**
+	 * Inserts a word in the trie.
+	 * @param word the word to insert
+	 */
+	void add(CharSequence word)
+	{
+		int node = 0;
+		for(int i = 0; i < word.length(); i++)
+		{
+			char c = word.charAt(i);
+			int child = firstChild[node];
+			while(child != 0 && labels[child] != c) child = nextSibling[child];
+			if(child == 0)
+			{
+				child = newNode(c);
+				nextSibling[child] = firstChild[node];
+				firstChild[node] = child;
+			}
+			node = child;
+		}
+		if(!terminal[node])
+		{
+			terminal[node] = true;
+			words++;
+			maxLength = Math.max(maxLength, word.length());
+		}
+	}
+
+	/**
+	 * Returns a copy of the trie, which can be modified without changing this trie.
+	 * @return the copy
+	 */
+	WordTrie copy()
+	{
+		return new WordTrie(this);
+	}
+
+	private int newNode(char label)
+	{
+		if(nodes == labels.length)
+		{
+			int capacity = labels.length*2;
+			labels = Arrays.copyOf(labels, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			terminal = Arrays.copyOf(terminal, capacity);
+		}
+		labels[nodes] = label;
+		return nodes++;
+	}
+
+	char label(int node)
+	{
+		return labels[node];
+	}
+
+	int firstChild(int node)
+	{
+		return firstChild[node];
+	}
+
+	int nextSibling(int node)
+	{
+		return nextSibling[node];
+	}
+
+	boolean isTerminal(int node)
+	{
+		return terminal[node];
+	}
+
+	/**
+	 * Returns the number of words in the trie
+	 * @return the number of words
+	 */
+	int size()
+	{
+		return words;
+	}
+
+	/**
+	 * Returns the number of nodes of the trie, root included
+	 * @return the number of nodes
+	 */
+	int nodeCount()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Returns the length of the longest word of the trie
+	 * @return the maximum word length
+	 */
+	int maxLength()
+	{
+		return maxLength;
+	}
+}